@@ -0,0 +1,28 @@
+package com.pro100kryto.server.extensions.configurator.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH entry point which always adds the GC profiler, so allocation rates are reported
+ * next to throughput and latency. Accepts the usual JMH command line options.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class);
+        if (commandLineOptions.getIncludes().isEmpty()) {
+            builder.include(XmlConfiguratorBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+}
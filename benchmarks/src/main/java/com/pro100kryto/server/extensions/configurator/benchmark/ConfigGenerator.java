@@ -0,0 +1,140 @@
+package com.pro100kryto.server.extensions.configurator.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Writes a synthetic config.xml and the baseLib jars it references into a working directory.
+ * Every baseLib jar references the next one in its manifest Class-Path, so recursive resolution
+ * reads a chain of jars. Action "action0" nests "action1" and so on up to the given depth,
+ * "stopAction0" stops what "action0" started, modules before their services.
+ */
+public final class ConfigGenerator {
+    private int services = 10;
+    private int modulesPerService = 10;
+    private int settingsPerModule = 10;
+    private int baseLibs = 5;
+    private int actionDepth = 5;
+    private boolean parallel = false;
+
+    public ConfigGenerator services(int services) {
+        this.services = services;
+        return this;
+    }
+
+    public ConfigGenerator modulesPerService(int modulesPerService) {
+        this.modulesPerService = modulesPerService;
+        return this;
+    }
+
+    public ConfigGenerator settingsPerModule(int settingsPerModule) {
+        this.settingsPerModule = settingsPerModule;
+        return this;
+    }
+
+    public ConfigGenerator baseLibs(int baseLibs) {
+        this.baseLibs = baseLibs;
+        return this;
+    }
+
+    public ConfigGenerator actionDepth(int actionDepth) {
+        this.actionDepth = actionDepth;
+        return this;
+    }
+
+    public ConfigGenerator parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    /**
+     * @param workingPath working path of the stub server, baseLibs are written to "core"
+     * @return generated config.xml
+     */
+    public File generate(File workingPath) throws IOException {
+        final File coreDir = new File(workingPath, "core");
+        if (!coreDir.isDirectory() && !coreDir.mkdirs()) throw new IOException("Failed to create " + coreDir);
+        for (int i = 0; i < baseLibs; i++) {
+            writeJar(new File(coreDir, libName(i)), i + 1 < baseLibs ? libName(i + 1) : null);
+        }
+
+        final File fileConfigs = new File(workingPath, "config.xml");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(fileConfigs.toPath(), StandardCharsets.UTF_8))) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.println("<server>");
+            out.println("  <settings>");
+            out.println("    <setting key=\"server.name\" val=\"benchmark\"/>");
+            out.println("  </settings>");
+            out.println("  <services parallel=\"" + parallel + "\">");
+
+            for (int s = 0; s < services; s++) {
+                out.println("    <service name=\"service" + s + "\" type=\"BenchmarkService\">");
+                if (baseLibs > 0) {
+                    out.println("      <baseLibs>");
+                    out.println("        <baseLib path=\"" + libName(0) + "\" recursive=\"true\"/>");
+                    out.println("      </baseLibs>");
+                }
+                out.println("      <settings>");
+                out.println("        <setting key=\"service.id\" val=\"" + s + "\"/>");
+                out.println("      </settings>");
+                out.println("      <modules>");
+                for (int m = 0; m < modulesPerService; m++) {
+                    out.println("        <module name=\"module" + m + "\" type=\"BenchmarkModule\">");
+                    out.println("          <settings>");
+                    for (int k = 0; k < settingsPerModule; k++) {
+                        out.println("            <setting key=\"key" + k + "\" val=\"value" + k + "\"/>");
+                    }
+                    out.println("          </settings>");
+                    out.println("        </module>");
+                }
+                out.println("      </modules>");
+                out.println("    </service>");
+            }
+            out.println("  </services>");
+
+            out.println("  <actions>");
+            for (int a = 0; a < actionDepth; a++) {
+                final int s = a % Math.max(services, 1);
+                out.println("    <action id=\"action" + a + "\">");
+                out.println("      <service method=\"start\" serviceName=\"service" + s + "\"/>");
+                out.println("      <module method=\"start\" serviceName=\"service" + s + "\" moduleName=\"module0\"/>");
+                if (a + 1 < actionDepth) {
+                    out.println("      <action id=\"action" + (a + 1) + "\"/>");
+                }
+                out.println("    </action>");
+
+                out.println("    <action id=\"stopAction" + a + "\">");
+                out.println("      <module method=\"stop\" serviceName=\"service" + s + "\" moduleName=\"module0\"/>");
+                out.println("      <service method=\"stop\" serviceName=\"service" + s + "\"/>");
+                if (a + 1 < actionDepth) {
+                    out.println("      <action id=\"stopAction" + (a + 1) + "\"/>");
+                }
+                out.println("    </action>");
+            }
+            out.println("  </actions>");
+            out.println("</server>");
+        }
+        return fileConfigs;
+    }
+
+    private static String libName(int index) {
+        return "lib" + index + ".jar";
+    }
+
+    private static void writeJar(File file, String classPath) throws IOException {
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (classPath != null) manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath());
+             JarOutputStream jar = new JarOutputStream(outputStream, manifest)) {
+            jar.flush();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.pro100kryto.server.extensions.configurator.benchmark;
+
+import com.pro100kryto.server.IServerControl;
+import com.pro100kryto.server.StartStopStatus;
+import com.pro100kryto.server.logger.ILogger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * No-op server: every interface of the server API (service manager, services, modules, logger)
+ * is a dynamic proxy which only counts calls, so the benchmarks measure the configurator alone.
+ * Services and modules keep their status, so start and stop steps of actions are executed
+ * instead of being skipped as no-op transitions.
+ */
+public final class StubServer implements InvocationHandler {
+    private final String workingPath;
+    private final ConcurrentHashMap<Class<?>, Object> proxies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Target> targets = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+
+    public StubServer(String workingPath) {
+        this.workingPath = workingPath;
+    }
+
+    public IServerControl getServerControl() {
+        return proxy(IServerControl.class);
+    }
+
+    public ILogger getLogger() {
+        return proxy(ILogger.class);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type) {
+        return (T) proxies.computeIfAbsent(type, key ->
+                Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class<?>[]{key}, this));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) return invokeObject(proxy, method, args);
+
+        calls.increment();
+        switch (method.getName()) {
+            case "createService":
+                return target((String) args[1]).proxy(method.getReturnType());
+            case "getService":
+                return target((String) args[0]).proxy(method.getReturnType());
+            default:
+                return defaultValue(method.getReturnType());
+        }
+    }
+
+    private Target target(String name) {
+        return targets.computeIfAbsent(name, Target::new);
+    }
+
+    private Object defaultValue(Class<?> returnType) {
+        if (returnType == String.class) return workingPath;
+        if (returnType.isInterface()) return proxy(returnType);
+        if (returnType.isEnum()) return returnType.getEnumConstants()[0];
+        if (returnType == boolean.class) return false;
+        if (returnType == int.class) return 0;
+        if (returnType == long.class) return 0L;
+        return null;
+    }
+
+    private static Object invokeObject(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "Stub" + proxy.getClass().getInterfaces()[0].getSimpleName();
+        }
+    }
+
+    // --------------
+
+    /**
+     * Service ("name") or module ("service/module") with its status, shared by its proxies.
+     */
+    private final class Target implements InvocationHandler {
+        private final String name;
+        private final ConcurrentHashMap<Class<?>, Object> targetProxies = new ConcurrentHashMap<>();
+        private volatile StartStopStatus status = StartStopStatus.STOPPED;
+
+        private Target(String name) {
+            this.name = name;
+        }
+
+        private Object proxy(Class<?> type) {
+            return targetProxies.computeIfAbsent(type, key ->
+                    Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class<?>[]{key}, this));
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) return invokeObject(proxy, method, args);
+
+            calls.increment();
+            switch (method.getName()) {
+                case "getStatus":
+                    return status;
+                case "start":
+                    status = StartStopStatus.STARTED;
+                    return null;
+                case "stop":
+                    status = StartStopStatus.STOPPED;
+                    return null;
+                case "createModule":
+                    return target(name + "/" + args[1]).proxy(method.getReturnType());
+                case "getModule":
+                    return target(name + "/" + args[0]).proxy(method.getReturnType());
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.pro100kryto.server.extensions.configurator.benchmark;
+
+import com.pro100kryto.server.extensions.configurator.XmlConfigurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measured paths:
+ * <ul>
+ *     <li>reloadConfiguration: reading, parsing and compiling config.xml</li>
+ *     <li>execConfiguration: creating all services and modules again with their baseLibs and settings</li>
+ *     <li>execAction: "action0" starting every service and module of the nested chain, then "stopAction0"
+ *     stopping them, so every step is a real transition of the stub</li>
+ *     <li>execActionStarted: "action0" on started targets, every step is skipped as a no-op transition</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlConfiguratorBenchmark {
+
+    @Param({"10", "100"})
+    public int services;
+
+    @Param({"10"})
+    public int modulesPerService;
+
+    @Param({"10"})
+    public int settingsPerModule;
+
+    @Param({"5"})
+    public int baseLibs;
+
+    @Param({"5"})
+    public int actionDepth;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Path workingPath;
+    private XmlConfigurator configurator;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        workingPath = Files.createTempDirectory("configurator-benchmark");
+        final File fileConfigs = new ConfigGenerator()
+                .services(services)
+                .modulesPerService(modulesPerService)
+                .settingsPerModule(settingsPerModule)
+                .baseLibs(baseLibs)
+                .actionDepth(actionDepth)
+                .parallel(parallel)
+                .generate(workingPath.toFile());
+
+        final StubServer stubServer = new StubServer(workingPath.toString());
+        configurator = new XmlConfigurator(stubServer.getServerControl(), actionDepth + 1, stubServer.getLogger());
+        configurator.loadFromFile(fileConfigs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walkFileTree(workingPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Benchmark
+    public Object reloadConfiguration() throws Throwable {
+        configurator.reloadConfiguration();
+        return configurator.getModel();
+    }
+
+    @Benchmark
+    public void execConfiguration() throws Throwable {
+        configurator.execConfiguration();
+    }
+
+    @Benchmark
+    public Object execAction() throws Throwable {
+        configurator.execAction("action0").get();
+        return configurator.execAction("stopAction0").get();
+    }
+
+    @Benchmark
+    public Object execActionStarted() throws Throwable {
+        return configurator.execAction("action0").get();
+    }
+}
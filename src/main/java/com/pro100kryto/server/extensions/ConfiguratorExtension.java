@@ -4,12 +4,41 @@ import com.pro100kryto.server.IServerControl;
 import com.pro100kryto.server.Server;
 import com.pro100kryto.server.StartStopStatus;
 import com.pro100kryto.server.extension.IExtension;
+import com.pro100kryto.server.extensions.configurator.ActionResult;
+import com.pro100kryto.server.extensions.configurator.ConfiguratorMetrics;
+import com.pro100kryto.server.extensions.configurator.ConfiguratorTrace;
 import com.pro100kryto.server.extensions.configurator.XmlConfigurator;
 import com.pro100kryto.server.logger.ILogger;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class ConfiguratorExtension implements IExtension {
+    private static final long DEFAULT_HOT_RELOAD_DEBOUNCE = 500;
+    private static final long DEFAULT_STOP_NODE_TIMEOUT = 10_000;
+    private static final long DEFAULT_STOP_TIMEOUT = 60_000;
+    private static final long DEFAULT_SUBSCRIBE_TIMEOUT = 60_000;
+    /**
+     * System property with the port to take the configuration from instead of config.xml
+     */
+    private static final String PROPERTY_SUBSCRIBE = "configurator.subscribe";
+    /**
+     * System property with the port to serve the configuration on
+     */
+    private static final String PROPERTY_SERVE = "configurator.serve";
+    /**
+     * System property with the file of the key shared by the source and its subscribers,
+     * "configurator.key" in the working path if not set
+     */
+    private static final String PROPERTY_KEY_FILE = "configurator.keyFile";
+
     private final IServerControl serverControl;
     private final XmlConfigurator configurator;
     private StartStopStatus status = StartStopStatus.STOPPED;
@@ -28,12 +57,35 @@ public class ConfiguratorExtension implements IExtension {
         status = StartStopStatus.STARTING;
 
         try{
-            configurator.loadFromFile(
-                    new File(serverControl.getWorkingPath() + File.separator +
-                            "config.xml"));
-            configurator.execConfiguration();
+            final Integer subscribePort = Integer.getInteger(PROPERTY_SUBSCRIBE);
+            if (subscribePort != null) {
+                try {
+                    configurator.subscribe(subscribePort, keyFile())
+                            .get(DEFAULT_SUBSCRIBE_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException executionException) {
+                    throw executionException.getCause();
+                }
+
+            } else {
+                configurator.setSnapshotFile(
+                        new File(serverControl.getWorkingPath() + File.separator +
+                                "config.snapshot"));
+                configurator.loadFromFile(
+                        new File(serverControl.getWorkingPath() + File.separator +
+                                "config.xml"));
+                configurator.execConfiguration();
+            }
+            logCriticalPath(configurator.getBootstrapTrace());
+
+            final Integer servePort = Integer.getInteger(PROPERTY_SERVE);
+            if (servePort != null) configurator.startDistribution(servePort, keyFile());
 
         } catch (Throwable throwable){
+            try {
+                configurator.stopDistribution();
+            } catch (Throwable stopThrowable) {
+                throwable.addSuppressed(stopThrowable);
+            }
             status = StartStopStatus.STOPPED;
             throw throwable;
         }
@@ -46,9 +98,15 @@ public class ConfiguratorExtension implements IExtension {
         if (status==StartStopStatus.STOPPED) throw new IllegalStateException("Already stopped");
         status = StartStopStatus.STOPPING;
 
-        // ...
-
-        status = StartStopStatus.STOPPED;
+        try {
+            configurator.stopDistribution();
+            configurator.stopHotReload();
+            configurator.shutdown(force, DEFAULT_STOP_NODE_TIMEOUT, DEFAULT_STOP_TIMEOUT).get();
+        } catch (ExecutionException executionException) {
+            throw executionException.getCause();
+        } finally {
+            status = StartStopStatus.STOPPED;
+        }
     }
 
     @Override
@@ -63,15 +121,157 @@ public class ConfiguratorExtension implements IExtension {
 
     @Override
     public void sendCommand(String command) throws Throwable {
-        if (command.endsWith("execAction ")){
-            String actionId = command.split(" ")[1];
-            configurator.execAction(actionId);
+        if (command.startsWith("execAction ")){
+            final String[] args = command.split(" ");
+            if (args.length != 2)
+                throw new IllegalArgumentException("Expected \"execAction actionId\"");
+            try {
+                configurator.execAction(args[1]).get();
+            } catch (ExecutionException executionException) {
+                throw executionException.getCause();
+            }
+
+        } else if (command.startsWith("execActions ")){
+            execActions(command.split(" "));
+
+        } else if (command.startsWith("actionResultWindow ")){
+            configurator.setActionResultWindow(Long.parseLong(command.split(" ")[1]));
 
         } else if (command.equals("execConfiguration")){
             configurator.execConfiguration();
 
+        } else if (command.startsWith("hotReload ")){
+            final String[] args = command.split(" ");
+            if (args[1].equals("on")) {
+                configurator.startHotReload(args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_HOT_RELOAD_DEBOUNCE);
+            } else if (args[1].equals("off")) {
+                configurator.stopHotReload();
+            } else {
+                throw new IllegalArgumentException("Expected \"hotReload on [debounceMillis]\" or \"hotReload off\"");
+            }
+
+        } else if (command.equals("applyChanges")){
+            try {
+                configurator.applyChanges().get();
+            } catch (ExecutionException executionException) {
+                throw executionException.getCause();
+            }
+
+        } else if (command.startsWith("createModule ")){
+            final String[] args = command.split(" ");
+            if (args.length != 3)
+                throw new IllegalArgumentException("Expected \"createModule serviceName moduleName\"");
+            try {
+                configurator.createLazyModule(args[1], args[2]).get();
+            } catch (ExecutionException executionException) {
+                throw executionException.getCause();
+            }
+
+        } else if (command.equals("distribution")){
+            logger.writeInfo("Configuration distribution: " + configurator.getDistributionStatus());
+
+        } else if (command.startsWith("distribution ")){
+            final String[] args = command.split(" ");
+            if (args.length == 3 && args[1].equals("serve")) {
+                configurator.startDistribution(Integer.parseInt(args[2]), keyFile());
+            } else if (args.length == 3 && args[1].equals("subscribe")) {
+                try {
+                    configurator.subscribe(Integer.parseInt(args[2]), keyFile()).get();
+                } catch (ExecutionException executionException) {
+                    throw executionException.getCause();
+                }
+            } else if (args.length == 2 && args[1].equals("stop")) {
+                configurator.stopDistribution();
+            } else {
+                throw new IllegalArgumentException(
+                        "Expected \"distribution serve port\", \"distribution subscribe port\" or \"distribution stop\"");
+            }
+
+        } else if (command.equals("stats")){
+            final List<String> report = configurator.getMetrics().report();
+            logger.writeInfo("Configurator stats, " + report.size() + " entries"
+                    + (ConfiguratorMetrics.isJfrAvailable() ? ", JFR events enabled" : ""));
+            for (final String line : report) {
+                logger.writeInfo(line);
+            }
+
+        } else if (command.equals("stats reset")){
+            configurator.getMetrics().reset();
+
+        } else if (command.equals("trace")){
+            logCriticalPath(configurator.getLastTrace());
+
+        } else if (command.equals("trace on")){
+            configurator.setActionTracing(true);
+
+        } else if (command.equals("trace off")){
+            configurator.setActionTracing(false);
+
+        } else if (command.startsWith("trace ")){
+            final ConfiguratorTrace trace = configurator.getLastTrace();
+            if (trace == null) throw new IllegalStateException("Nothing traced yet");
+            File file = new File(command.substring("trace ".length()).trim());
+            if (!file.isAbsolute()) file = new File(serverControl.getWorkingPath() + File.separator + file);
+            try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+                trace.writeChromeTrace(writer);
+            }
+            logger.writeInfo("Trace of " + trace.getName() + " (" + trace.getSpanCount()
+                    + " spans) written to \"" + file + "\"");
+
         } else {
             throw new UnsupportedOperationException("Unknown command");
         }
     }
+
+    private File keyFile() {
+        final String keyFile = System.getProperty(PROPERTY_KEY_FILE);
+        return keyFile != null ?
+                new File(keyFile) :
+                new File(serverControl.getWorkingPath() + File.separator + "configurator.key");
+    }
+
+    private void logCriticalPath(@Nullable ConfiguratorTrace trace) {
+        if (trace == null) return;
+        for (final String line : trace.criticalPath()) {
+            logger.writeInfo(line);
+        }
+    }
+
+    /**
+     * "execActions id1,id2,... [parallelism=N]"
+     */
+    private void execActions(String[] args) throws Throwable {
+        if (args.length < 2 || args.length > 3)
+            throw new IllegalArgumentException("Expected \"execActions id1,id2,... [parallelism=N]\"");
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (args.length == 3) {
+            if (!args[2].startsWith("parallelism="))
+                throw new IllegalArgumentException("Expected \"parallelism=N\", got \"" + args[2] + "\"");
+            parallelism = Integer.parseInt(args[2].substring("parallelism=".length()));
+        }
+
+        final ArrayList<String> actionIds = new ArrayList<>();
+        for (final String actionId : args[1].split(",")) {
+            if (!actionId.isEmpty()) actionIds.add(actionId);
+        }
+
+        final List<ActionResult> results;
+        try {
+            results = configurator.execActions(actionIds, parallelism).get();
+        } catch (ExecutionException executionException) {
+            throw executionException.getCause();
+        }
+
+        final IllegalStateException exception = new IllegalStateException("Some actions failed");
+        for (final ActionResult result : results) {
+            if (result.isSuccess()) {
+                logger.writeInfo("Action " + result);
+            } else {
+                logger.writeError("Action " + result);
+                exception.addSuppressed(result.getError());
+            }
+        }
+        if (exception.getSuppressed().length != 0) throw exception;
+    }
 }
@@ -0,0 +1,159 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.IServerControl;
+import com.pro100kryto.server.StartStopStatus;
+import com.pro100kryto.server.module.IModule;
+import com.pro100kryto.server.service.IService;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes compiled action plans on the {@link AsyncEngine}.
+ */
+final class ActionExecutor {
+    private final IServerControl serverControl;
+    private final AsyncEngine engine;
+    private final ConfiguratorMetrics metrics;
+    private final TargetLocks locks;
+    private final LazyModules lazyModules;
+    private volatile int maxCountRecursion;
+
+    ActionExecutor(IServerControl serverControl, AsyncEngine engine, ConfiguratorMetrics metrics,
+                   TargetLocks locks, LazyModules lazyModules, int maxCountRecursion) {
+        this.serverControl = serverControl;
+        this.engine = engine;
+        this.metrics = metrics;
+        this.locks = locks;
+        this.lazyModules = lazyModules;
+        this.maxCountRecursion = maxCountRecursion;
+    }
+
+    void setMaxCountRecursion(int maxCountRecursion) {
+        this.maxCountRecursion = maxCountRecursion;
+    }
+
+    /**
+     * @param token execution which is not continued once it is completed or cancelled
+     */
+    CompletableFuture<Void> execAction(ActionIndex actionIndex, String actionId, TraceSpan parent,
+                                       CompletableFuture<?> token) {
+        final long startNanos = metrics.start();
+        final TraceSpan span = parent.child(TraceSpan.Kind.ACTION, actionId);
+        final ActionPlan plan = actionIndex.get(actionId);
+        if (plan != null) {
+            if (plan.getError() != null)
+                return span.end(metrics.record(ConfiguratorMetrics.ACTION, actionId, startNanos,
+                        AsyncEngine.failed(plan.getError())));
+            // the whole nested chain is checked before anything is executed
+            if (plan.getDepth() > maxCountRecursion)
+                return span.end(metrics.record(ConfiguratorMetrics.ACTION, actionId, startNanos,
+                        AsyncEngine.failed(new IllegalStateException("Too many recursions"))));
+        }
+
+        final CompletableFuture<Void> chain = engine.delay(actionIndex.getActionsDelay(), span, "actions", token);
+        if (plan == null) return span.end(metrics.record(ConfiguratorMetrics.ACTION, actionId, startNanos, chain));
+        return span.end(metrics.record(ConfiguratorMetrics.ACTION, actionId, startNanos,
+                chain.thenCompose(ignored -> execPlan(actionIndex, plan, span, token))));
+    }
+
+    private CompletableFuture<Void> execPlan(ActionIndex actionIndex, ActionPlan plan, TraceSpan span,
+                                             CompletableFuture<?> token) {
+        CompletableFuture<Void> chain = engine.delay(plan.getDelay(), span, "action", token);
+
+        for (final ActionStep step : plan.getSteps()) {
+            chain = chain
+                    .thenCompose(ignored -> engine.delay(step.getDelay(), span, "element", token))
+                    .thenCompose(ignored -> execStep(actionIndex, step, span, token));
+        }
+        return chain;
+    }
+
+    private CompletableFuture<Void> execStep(ActionIndex actionIndex, ActionStep step, TraceSpan parent,
+                                             CompletableFuture<?> token) {
+        final TraceSpan.Kind spanKind = step.getMethod() == ActionStep.Method.START ?
+                TraceSpan.Kind.START :
+                TraceSpan.Kind.STOP;
+        switch (step.getKind()) {
+            case ACTION: {
+                final long startNanos = metrics.start();
+                final TraceSpan span = parent.child(TraceSpan.Kind.ACTION, step.getActionId());
+                final CompletableFuture<Void> chain = engine.delay(actionIndex.getActionsDelay(), span, "actions",
+                        token);
+                final ActionPlan nestedPlan = step.getPlan();
+                if (nestedPlan != null && nestedPlan.getError() != null)
+                    return span.end(metrics.record(ConfiguratorMetrics.ACTION, step.getActionId(), startNanos,
+                            AsyncEngine.failed(nestedPlan.getError())));
+                if (nestedPlan == null)
+                    return span.end(metrics.record(ConfiguratorMetrics.ACTION, step.getActionId(), startNanos,
+                            chain));
+                return span.end(metrics.record(ConfiguratorMetrics.ACTION, step.getActionId(), startNanos,
+                        chain.thenCompose(ignored -> execPlan(actionIndex, nestedPlan, span, token))));
+            }
+            case SERVICE: {
+                final long startNanos = metrics.start();
+                final CompletableFuture<Void> future = engine.run(() ->
+                        parent.child(spanKind, step.getServiceName()).run(() ->
+                                locks.runWithService(step.getServiceName(), () -> execServiceStep(step))),
+                        engine.getWorkers(), token);
+                return metrics.record(ConfiguratorMetrics.PHASE,
+                        step.getMethod() == ActionStep.Method.START ? "startService" : "stopService",
+                        startNanos, future);
+            }
+            case MODULE: {
+                if (step.getMethod() == ActionStep.Method.STOP
+                        && lazyModules.isPending(step.getServiceName(), step.getModuleName())) {
+                    // a lazy module which was never created is already stopped
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                final long startNanos = metrics.start();
+                final CompletableFuture<Void> future = lazyModules
+                        .ensureCreated(step.getServiceName(), step.getModuleName(), token)
+                        .thenCompose(ignored -> engine.run(() ->
+                                parent.child(spanKind, step.getServiceName() + "/" + step.getModuleName()).run(() ->
+                                        locks.runWithModule(step.getServiceName(), step.getModuleName(),
+                                                () -> execModuleStep(step))),
+                                engine.getWorkers(), token));
+                return metrics.record(ConfiguratorMetrics.PHASE,
+                        step.getMethod() == ActionStep.Method.START ? "startModule" : "stopModule",
+                        startNanos, future);
+            }
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    private void execServiceStep(ActionStep step) throws Throwable {
+        final IService service = serverControl.getServiceManager().getService(step.getServiceName());
+        if (isNoop(step, service.getStatus())) return;
+        if (step.getMethod() == ActionStep.Method.START) {
+            service.start();
+        } else {
+            service.stop(step.isForce());
+        }
+    }
+
+    private void execModuleStep(ActionStep step) throws Throwable {
+        final IModule module = serverControl.getServiceManager()
+                .getService(step.getServiceName())
+                .getModule(step.getModuleName());
+        if (isNoop(step, module.getStatus())) return;
+        if (step.getMethod() == ActionStep.Method.START) {
+            module.start();
+        } else {
+            module.stop(step.isForce());
+        }
+    }
+
+    /**
+     * A target which is in or already moving to the requested state is left alone.
+     * Runs under the target lock, so the status cannot change in between.
+     */
+    private boolean isNoop(ActionStep step, StartStopStatus status) {
+        final boolean noop = step.getMethod() == ActionStep.Method.START ?
+                status == StartStopStatus.STARTED || status == StartStopStatus.STARTING :
+                status == StartStopStatus.STOPPED || status == StartStopStatus.STOPPING;
+        if (noop) metrics.record(ConfiguratorMetrics.PHASE, "noopTransition", metrics.start());
+        return noop;
+    }
+}
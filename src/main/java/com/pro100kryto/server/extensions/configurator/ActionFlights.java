@@ -0,0 +1,117 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-flight execution of requested actions: concurrent requests for the same action id of the same
+ * loaded configuration share one execution and its result. A successful execution is remembered for the
+ * result window, requests within it get the result without executing again, even if another action has
+ * changed the targets since. The window is 0 unless set, so only concurrent requests are shared.
+ * A failed execution is forgotten at once, so the next request retries.
+ */
+final class ActionFlights {
+    private final AsyncEngine engine;
+    private final ActionExecutor actionExecutor;
+    private final ConfiguratorMetrics metrics;
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+    private volatile long resultWindowMillis = 0;
+
+    ActionFlights(AsyncEngine engine, ActionExecutor actionExecutor, ConfiguratorMetrics metrics) {
+        this.engine = engine;
+        this.actionExecutor = actionExecutor;
+        this.metrics = metrics;
+    }
+
+    void setResultWindow(long resultWindowMillis) {
+        this.resultWindowMillis = resultWindowMillis;
+    }
+
+    /**
+     * @param caller future of the request, the shared execution is cancelled once all its requests are
+     */
+    CompletableFuture<Void> execAction(ActionIndex actionIndex, String actionId, TraceSpan parent,
+                                       CompletableFuture<?> caller) {
+        while (true) {
+            final Flight current = flights.get(actionId);
+            if (current != null && current.actionIndex == actionIndex && current.join()) {
+                final boolean recent = current.result.isDone();
+                metrics.record(ConfiguratorMetrics.PHASE, recent ? "actionRecent" : "actionCoalesced",
+                        metrics.start());
+                if (!recent) leaveOnCancel(current, caller);
+                return parent.child(TraceSpan.Kind.ACTION, actionId + (recent ? " (recent)" : " (coalesced)"))
+                        .end(current.result);
+            }
+
+            final Flight flight = new Flight(actionIndex);
+            final boolean started = current == null ?
+                    flights.putIfAbsent(actionId, flight) == null :
+                    flights.replace(actionId, current, flight);
+            if (!started) continue;
+
+            flights.values().removeIf(Flight::isExpired);
+            leaveOnCancel(flight, caller);
+            // the flight is settled before its result completes, so a request made right after sees the window
+            final CompletableFuture<Void> execution = actionExecutor.execAction(actionIndex, actionId, parent, flight.token)
+                    .whenComplete((ignored, throwable) -> {
+                        final long resultWindowMillis = this.resultWindowMillis;
+                        if (throwable != null || resultWindowMillis <= 0) {
+                            flights.remove(actionId, flight);
+                        } else {
+                            flight.completedNanos = System.nanoTime();
+                            engine.schedule(() -> flights.remove(actionId, flight), resultWindowMillis);
+                        }
+                    });
+            AsyncEngine.forward(execution, flight.result);
+            return flight.result;
+        }
+    }
+
+    private static void leaveOnCancel(Flight flight, CompletableFuture<?> caller) {
+        caller.whenComplete((ignored, throwable) -> {
+            if (caller.isCancelled()) flight.leave();
+        });
+    }
+
+    private final class Flight {
+        private final ActionIndex actionIndex;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final CompletableFuture<Void> token = new CompletableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger(1);
+        private volatile long completedNanos = -1;
+
+        private Flight(ActionIndex actionIndex) {
+            this.actionIndex = actionIndex;
+        }
+
+        /**
+         * @return false if all requests were cancelled, the execution failed or the result is too old
+         */
+        private boolean join() {
+            if (result.isDone()) {
+                final long completedNanos = this.completedNanos;
+                return completedNanos != -1 && !result.isCompletedExceptionally()
+                        && System.nanoTime() - completedNanos <= resultWindowMillis * 1_000_000L;
+            }
+
+            int count;
+            do {
+                count = callers.get();
+                if (count == 0) return false;
+            } while (!callers.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * @return true if the execution is done and its result is not remembered anymore
+         */
+        private boolean isExpired() {
+            return result.isDone() && !join();
+        }
+
+        private void leave() {
+            if (callers.decrementAndGet() == 0) token.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+
+final class ActionIndex {
+    static final ActionIndex EMPTY = new ActionIndex(0, Collections.<String, ActionPlan>emptyMap());
+
+    private final long actionsDelay;
+    private final Map<String, ActionPlan> plans;
+
+    ActionIndex(long actionsDelay, Map<String, ActionPlan> plans) {
+        this.actionsDelay = actionsDelay;
+        this.plans = Collections.unmodifiableMap(plans);
+    }
+
+    /**
+     * @return delay of the &lt;actions&gt; element, applied on every (nested) action call
+     */
+    long getActionsDelay() {
+        return actionsDelay;
+    }
+
+    @Nullable
+    ActionPlan get(String actionId) {
+        return plans.get(actionId);
+    }
+
+    Map<String, ActionPlan> getPlans() {
+        return plans;
+    }
+}
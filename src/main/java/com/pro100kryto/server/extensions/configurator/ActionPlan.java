@@ -0,0 +1,52 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+final class ActionPlan {
+    static final int UNBOUNDED_DEPTH = Integer.MAX_VALUE;
+
+    private final String id;
+    private final long delay;
+    private final List<ActionStep> steps;
+    private final int depth;
+    @Nullable
+    private final RuntimeException error;
+
+    ActionPlan(String id, long delay, List<ActionStep> steps, int depth, @Nullable RuntimeException error) {
+        this.id = id;
+        this.delay = delay;
+        this.steps = Collections.unmodifiableList(steps);
+        this.depth = depth;
+        this.error = error;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    long getDelay() {
+        return delay;
+    }
+
+    List<ActionStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return nesting depth of this action including itself, {@link #UNBOUNDED_DEPTH} for cycles
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return error found while compiling the action, thrown on execution
+     */
+    @Nullable
+    RuntimeException getError() {
+        return error;
+    }
+}
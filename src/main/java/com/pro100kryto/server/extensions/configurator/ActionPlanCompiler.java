@@ -0,0 +1,116 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionElementConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionsConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns the &lt;actions&gt; configuration into an {@link ActionIndex}: nested actions are linked,
+ * delays and methods are parsed and the nesting depth is computed once per reload.
+ */
+final class ActionPlanCompiler {
+    private final Map<String, ActionConfig> actionById = new LinkedHashMap<>();
+    private final Map<String, ActionPlan> plans = new HashMap<>();
+    private final Set<String> inProgress = new HashSet<>();
+
+    private ActionPlanCompiler() {
+    }
+
+    static ActionIndex compile(ActionsConfig actionsConfig) {
+        final ActionPlanCompiler compiler = new ActionPlanCompiler();
+        for (final ActionConfig actionConfig : actionsConfig.getActions()) {
+            // the first declaration wins, same as the lookup did before
+            if (!compiler.actionById.containsKey(actionConfig.getId())) {
+                compiler.actionById.put(actionConfig.getId(), actionConfig);
+            }
+        }
+        for (final String actionId : compiler.actionById.keySet()) {
+            compiler.compilePlan(actionId);
+        }
+
+        return new ActionIndex(actionsConfig.getDelay(), compiler.plans);
+    }
+
+    private ActionPlan compilePlan(String actionId) {
+        final ActionPlan compiled = plans.get(actionId);
+        if (compiled != null) return compiled;
+
+        final ActionConfig actionConfig = actionById.get(actionId);
+        inProgress.add(actionId);
+
+        final ArrayList<ActionStep> steps = new ArrayList<>(actionConfig.getElements().size());
+        int depth = 1;
+        RuntimeException error = null;
+
+        try {
+            for (final ActionElementConfig element : actionConfig.getElements()) {
+                switch (element.getTag()) {
+                    case "action": {
+                        final String nestedId = element.getId();
+                        ActionPlan nestedPlan = null;
+                        int nestedDepth = 1;
+
+                        if (inProgress.contains(nestedId)) {
+                            nestedDepth = ActionPlan.UNBOUNDED_DEPTH;
+                        } else if (actionById.containsKey(nestedId)) {
+                            nestedPlan = compilePlan(nestedId);
+                            nestedDepth = nestedPlan.getDepth();
+                        }
+
+                        depth = Math.max(depth, nestedDepth == ActionPlan.UNBOUNDED_DEPTH ?
+                                ActionPlan.UNBOUNDED_DEPTH :
+                                nestedDepth + 1);
+                        // an invalid nested action makes this one invalid, nothing is executed
+                        if (nestedPlan != null && nestedPlan.getError() != null) throw nestedPlan.getError();
+                        steps.add(ActionStep.action(element.getDelay(), nestedId, nestedPlan));
+                        break;
+                    }
+                    case "service":
+                        steps.add(ActionStep.service(
+                                element.getDelay(),
+                                parseMethod(element.getMethod()),
+                                element.isForce(),
+                                element.getServiceName()
+                        ));
+                        break;
+                    case "module":
+                        steps.add(ActionStep.module(
+                                element.getDelay(),
+                                parseMethod(element.getMethod()),
+                                element.isForce(),
+                                element.getServiceName(),
+                                element.getModuleName()
+                        ));
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("Unsupported tag '" + element.getTag() + "'");
+                }
+            }
+        } catch (RuntimeException exception) {
+            error = exception;
+        }
+
+        inProgress.remove(actionId);
+        final ActionPlan plan = new ActionPlan(actionId, actionConfig.getDelay(), steps, depth, error);
+        plans.put(actionId, plan);
+        return plan;
+    }
+
+    private static ActionStep.Method parseMethod(String actionMethod) {
+        switch (actionMethod) {
+            case "start":
+                return ActionStep.Method.START;
+            case "stop":
+                return ActionStep.Method.STOP;
+            default:
+                throw new UnsupportedOperationException("Unsupported method '" + actionMethod + "'");
+        }
+    }
+}
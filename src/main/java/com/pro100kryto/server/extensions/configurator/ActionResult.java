@@ -0,0 +1,46 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of one action of {@link XmlConfigurator#execActions(java.util.Collection, int)}.
+ */
+public final class ActionResult {
+    private final String actionId;
+    @Nullable
+    private final Throwable error;
+    private final long durationNanos;
+
+    ActionResult(String actionId, @Nullable Throwable error, long durationNanos) {
+        this.actionId = actionId;
+        this.error = error;
+        this.durationNanos = durationNanos;
+    }
+
+    public String getActionId() {
+        return actionId;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+
+    public long getDuration(TimeUnit timeUnit) {
+        return timeUnit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return actionId + (error == null ? " done" : " failed") + " in "
+                + String.format(Locale.ROOT, "%.3f", durationNanos / 1_000_000.0) + " ms"
+                + (error == null ? "" : ": " + error);
+    }
+}
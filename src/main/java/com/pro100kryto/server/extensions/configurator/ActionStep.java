@@ -0,0 +1,87 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+final class ActionStep {
+    enum Kind { ACTION, SERVICE, MODULE }
+    enum Method { START, STOP }
+
+    private final Kind kind;
+    private final long delay;
+    @Nullable
+    private final Method method;
+    private final boolean force;
+    @Nullable
+    private final String serviceName;
+    @Nullable
+    private final String moduleName;
+    @Nullable
+    private final String actionId;
+    @Nullable
+    private final ActionPlan plan;
+
+    private ActionStep(Kind kind, long delay, @Nullable Method method, boolean force,
+                       @Nullable String serviceName, @Nullable String moduleName,
+                       @Nullable String actionId, @Nullable ActionPlan plan) {
+        this.kind = kind;
+        this.delay = delay;
+        this.method = method;
+        this.force = force;
+        this.serviceName = serviceName;
+        this.moduleName = moduleName;
+        this.actionId = actionId;
+        this.plan = plan;
+    }
+
+    static ActionStep action(long delay, String actionId, @Nullable ActionPlan plan) {
+        return new ActionStep(Kind.ACTION, delay, null, false, null, null, actionId, plan);
+    }
+
+    static ActionStep service(long delay, Method method, boolean force, String serviceName) {
+        return new ActionStep(Kind.SERVICE, delay, method, force, serviceName, null, null, null);
+    }
+
+    static ActionStep module(long delay, Method method, boolean force, String serviceName, String moduleName) {
+        return new ActionStep(Kind.MODULE, delay, method, force, serviceName, moduleName, null, null);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    long getDelay() {
+        return delay;
+    }
+
+    @Nullable
+    Method getMethod() {
+        return method;
+    }
+
+    boolean isForce() {
+        return force;
+    }
+
+    @Nullable
+    String getServiceName() {
+        return serviceName;
+    }
+
+    @Nullable
+    String getModuleName() {
+        return moduleName;
+    }
+
+    @Nullable
+    String getActionId() {
+        return actionId;
+    }
+
+    /**
+     * @return compiled nested action or null if the referenced id is not declared
+     */
+    @Nullable
+    ActionPlan getPlan() {
+        return plan;
+    }
+}
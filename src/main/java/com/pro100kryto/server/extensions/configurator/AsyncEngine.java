@@ -0,0 +1,228 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs configuration and action steps without holding a thread during "delay":
+ * a delay is a timer on a shared scheduler, blocking calls (create, start, stop)
+ * run on worker threads. Workers are virtual threads when the JVM supports them.
+ * {@link #close()} releases the threads, they are created again if the engine is used after it.
+ */
+final class AsyncEngine {
+    private final String name;
+    private final ConfiguratorMetrics metrics;
+    private final Executor workersExecutor = runnable -> workers().execute(runnable);
+    private volatile ScheduledThreadPoolExecutor timer;
+    private volatile ExecutorService workers;
+
+    AsyncEngine(String name, ConfiguratorMetrics metrics) {
+        this.name = name;
+        this.metrics = metrics;
+    }
+
+    Executor getWorkers() {
+        return workersExecutor;
+    }
+
+    /**
+     * Shuts the timer and the workers down, already scheduled delays and running steps are completed.
+     */
+    synchronized void close() {
+        if (timer != null) timer.shutdown();
+        if (workers != null) workers.shutdown();
+    }
+
+    /**
+     * @param token execution which is not continued once it is completed or cancelled,
+     *              the delay fails as soon as it is
+     */
+    CompletableFuture<Void> delay(long delay, CompletableFuture<?> token) {
+        if (delay <= 0) return checkToken(token);
+
+        final long startNanos = metrics.start();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final ScheduledFuture<?> scheduled = timer().schedule(() -> {
+            metrics.record(ConfiguratorMetrics.PHASE, "delay", startNanos);
+            workersExecutor.execute(() -> future.complete(null));
+        }, delay, TimeUnit.MILLISECONDS);
+        token.whenComplete((ignored, throwable) -> {
+            scheduled.cancel(false);
+            future.completeExceptionally(new CancellationException());
+        });
+        return future;
+    }
+
+    /**
+     * Delay traced as a child of the given span.
+     */
+    CompletableFuture<Void> delay(long delay, TraceSpan parent, String name, CompletableFuture<?> token) {
+        if (delay <= 0) return checkToken(token);
+        return parent.child(TraceSpan.Kind.DELAY, name).end(delay(delay, token));
+    }
+
+    ScheduledFuture<?> schedule(Runnable runnable, long delay) {
+        return timer().schedule(() -> workersExecutor.execute(runnable), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return future completed as the given one or with {@link TimeoutException} after the timeout,
+     * the given future is not cancelled
+     */
+    <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutMillis) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final ScheduledFuture<?> timeout = schedule(() -> result.completeExceptionally(new TimeoutException()),
+                Math.max(timeoutMillis, 0));
+        future.whenComplete((value, throwable) -> {
+            timeout.cancel(false);
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    CompletableFuture<Void> run(ThrowingRunnable runnable, Executor executor, CompletableFuture<?> token) {
+        return supply(() -> {
+            runnable.run();
+            return null;
+        }, executor, token);
+    }
+
+    <T> CompletableFuture<T> supply(ThrowingSupplier<T> supplier, Executor executor, CompletableFuture<?> token) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (token.isDone()) throw new CancellationException();
+            try {
+                return supplier.get();
+            } catch (Throwable throwable) {
+                throw new CompletionException(throwable);
+            }
+        }, executor);
+    }
+
+    // --------------
+
+    static <T> CompletableFuture<T> failed(Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Completes the target with the result of the source, unwrapping {@link CompletionException}.
+     */
+    static <T> void forward(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                target.completeExceptionally(unwrap(throwable));
+            } else {
+                target.complete(result);
+            }
+        });
+    }
+
+    /**
+     * Waits for the future and rethrows the original failure.
+     */
+    static <T> T await(Future<T> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException executionException) {
+            throw unwrap(executionException.getCause());
+        }
+    }
+
+    static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    private ScheduledThreadPoolExecutor timer() {
+        final ScheduledThreadPoolExecutor timer = this.timer;
+        if (timer != null && !timer.isShutdown()) return timer;
+        synchronized (this) {
+            if (this.timer == null || this.timer.isShutdown()) {
+                final ScheduledThreadPoolExecutor created = new ScheduledThreadPoolExecutor(1,
+                        daemonThreadFactory(name + "-timer"));
+                created.setRemoveOnCancelPolicy(true);
+                created.setKeepAliveTime(30, TimeUnit.SECONDS);
+                created.allowCoreThreadTimeOut(true);
+                this.timer = created;
+            }
+            return this.timer;
+        }
+    }
+
+    private ExecutorService workers() {
+        final ExecutorService workers = this.workers;
+        if (workers != null && !workers.isShutdown()) return workers;
+        synchronized (this) {
+            if (this.workers == null || this.workers.isShutdown()) this.workers = createWorkers(name + "-worker");
+            return this.workers;
+        }
+    }
+
+    private static CompletableFuture<Void> checkToken(CompletableFuture<?> token) {
+        return token.isDone() ?
+                AsyncEngine.<Void>failed(new CancellationException()) :
+                CompletableFuture.<Void>completedFuture(null);
+    }
+
+    @Nullable
+    private static ExecutorService createVirtualWorkers() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException | LinkageError ignored) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createWorkers(String name) {
+        final ExecutorService virtualWorkers = createVirtualWorkers();
+        if (virtualWorkers != null) return virtualWorkers;
+        return Executors.newCachedThreadPool(daemonThreadFactory(name));
+    }
+
+    static ThreadFactory daemonThreadFactory(String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    interface ThrowingRunnable {
+        void run() throws Throwable;
+    }
+
+    interface ThrowingSupplier<T> {
+        T get() throws Throwable;
+    }
+}
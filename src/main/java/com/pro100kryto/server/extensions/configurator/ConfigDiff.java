@@ -0,0 +1,215 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Difference between the applied configuration and a newly loaded one.
+ * Only additions and changed settings can be applied in place,
+ * everything else is collected in {@link #getNotApplicable()}.
+ */
+final class ConfigDiff {
+    private final ConfigModel model;
+    private final Map<String, String> serverSettings = new LinkedHashMap<>();
+    private final List<BaseLibConfig> serverBaseLibs = new ArrayList<>();
+    private final List<BaseLibConfig> servicesBaseLibs = new ArrayList<>();
+    private final List<ServiceConfig> addedServices = new ArrayList<>();
+    private final List<ServiceDelta> changedServices = new ArrayList<>();
+    private final List<String> notApplicable = new ArrayList<>();
+
+    private ConfigDiff(ConfigModel model) {
+        this.model = model;
+    }
+
+    static ConfigDiff compute(ConfigModel applied, ConfigModel loaded) {
+        final ConfigDiff diff = new ConfigDiff(loaded);
+
+        diffSettings("server", applied.getSettings(), loaded.getSettings(), diff.serverSettings, diff.notApplicable);
+        diffBaseLibs("server", applied.getBaseLibs(), loaded.getBaseLibs(), diff.serverBaseLibs, diff.notApplicable);
+        diffBaseLibs("services", applied.getServices().getBaseLibs(), loaded.getServices().getBaseLibs(),
+                diff.servicesBaseLibs, diff.notApplicable);
+
+        final Map<String, ServiceConfig> appliedServices = new LinkedHashMap<>();
+        for (final ServiceConfig serviceConfig : applied.getServices().getServices()) {
+            appliedServices.put(serviceConfig.getName(), serviceConfig);
+        }
+
+        for (final ServiceConfig serviceConfig : loaded.getServices().getServices()) {
+            final ServiceConfig appliedService = appliedServices.remove(serviceConfig.getName());
+            if (appliedService == null) {
+                diff.addedServices.add(serviceConfig);
+                continue;
+            }
+            if (!appliedService.getType().equals(serviceConfig.getType())) {
+                diff.notApplicable.add("service \"" + serviceConfig.getName() + "\": type changed");
+                continue;
+            }
+
+            final ServiceDelta delta = new ServiceDelta(serviceConfig);
+            diff.diffService(applied, appliedService, serviceConfig, delta);
+            if (!delta.isEmpty()) diff.changedServices.add(delta);
+        }
+
+        for (final String serviceName : appliedServices.keySet()) {
+            diff.notApplicable.add("service \"" + serviceName + "\": removed");
+        }
+
+        return diff;
+    }
+
+    private void diffService(ConfigModel appliedModel, ServiceConfig applied, ServiceConfig loaded,
+                             ServiceDelta delta) {
+        final String target = "service \"" + loaded.getName() + "\"";
+        diffSettings(target, applied.getSettings(), loaded.getSettings(), delta.settings, notApplicable);
+        diffBaseLibs(target, applied.getBaseLibs(), loaded.getBaseLibs(), delta.baseLibs, notApplicable);
+
+        final Map<String, ModuleConfig> appliedModules = new LinkedHashMap<>();
+        for (final ModuleConfig moduleConfig : applied.getModules()) {
+            appliedModules.put(moduleConfig.getName(), moduleConfig);
+        }
+
+        for (final ModuleConfig moduleConfig : loaded.getModules()) {
+            final ModuleConfig appliedModule = appliedModules.remove(moduleConfig.getName());
+            if (appliedModule == null) {
+                delta.addedModules.add(moduleConfig);
+            } else if (!appliedModule.getType().equals(moduleConfig.getType())) {
+                notApplicable.add("module \"" + loaded.getName() + "/" + moduleConfig.getName() + "\": type changed");
+            } else if (appliedModule.isLazy() != moduleConfig.isLazy()) {
+                notApplicable.add("module \"" + loaded.getName() + "/" + moduleConfig.getName() + "\": lazy changed");
+            } else if (!Objects.equals(appliedModel.getModuleSettings(appliedModule),
+                    model.getModuleSettings(moduleConfig))) {
+                if (model.getModuleSettings(moduleConfig) == null) {
+                    notApplicable.add("module \"" + loaded.getName() + "/" + moduleConfig.getName()
+                            + "\": settings removed");
+                } else {
+                    delta.changedModules.add(moduleConfig);
+                }
+            }
+        }
+
+        for (final String moduleName : appliedModules.keySet()) {
+            notApplicable.add("module \"" + loaded.getName() + "/" + moduleName + "\": removed");
+        }
+    }
+
+    private static void diffSettings(String target, Map<String, String> applied, Map<String, String> loaded,
+                                     Map<String, String> changed, List<String> notApplicable) {
+        for (final Map.Entry<String, String> setting : loaded.entrySet()) {
+            if (!setting.getValue().equals(applied.get(setting.getKey()))) {
+                changed.put(setting.getKey(), setting.getValue());
+            }
+        }
+        for (final String key : applied.keySet()) {
+            if (!loaded.containsKey(key)) {
+                notApplicable.add(target + ": setting \"" + key + "\" removed");
+            }
+        }
+    }
+
+    private static void diffBaseLibs(String target, List<BaseLibConfig> applied, List<BaseLibConfig> loaded,
+                                     List<BaseLibConfig> added, List<String> notApplicable) {
+        for (final BaseLibConfig baseLib : loaded) {
+            if (!applied.contains(baseLib)) added.add(baseLib);
+        }
+        for (final BaseLibConfig baseLib : applied) {
+            if (!loaded.contains(baseLib)) {
+                notApplicable.add(target + ": baseLib \"" + baseLib + "\" removed");
+            }
+        }
+    }
+
+    // --------------
+
+    /**
+     * @return loaded configuration the difference leads to
+     */
+    ConfigModel getModel() {
+        return model;
+    }
+
+    boolean isEmpty() {
+        return serverSettings.isEmpty() && serverBaseLibs.isEmpty() && servicesBaseLibs.isEmpty()
+                && addedServices.isEmpty() && changedServices.isEmpty() && notApplicable.isEmpty();
+    }
+
+    Map<String, String> getServerSettings() {
+        return Collections.unmodifiableMap(serverSettings);
+    }
+
+    List<BaseLibConfig> getServerBaseLibs() {
+        return Collections.unmodifiableList(serverBaseLibs);
+    }
+
+    List<BaseLibConfig> getServicesBaseLibs() {
+        return Collections.unmodifiableList(servicesBaseLibs);
+    }
+
+    List<ServiceConfig> getAddedServices() {
+        return Collections.unmodifiableList(addedServices);
+    }
+
+    List<ServiceDelta> getChangedServices() {
+        return Collections.unmodifiableList(changedServices);
+    }
+
+    List<String> getNotApplicable() {
+        return Collections.unmodifiableList(notApplicable);
+    }
+
+    @Override
+    public String toString() {
+        return "server settings: " + serverSettings.size()
+                + ", baseLibs: " + (serverBaseLibs.size() + servicesBaseLibs.size())
+                + ", new services: " + addedServices.size()
+                + ", changed services: " + changedServices.size()
+                + ", not applicable: " + notApplicable.size();
+    }
+
+    static final class ServiceDelta {
+        private final ServiceConfig serviceConfig;
+        private final Map<String, String> settings = new LinkedHashMap<>();
+        private final List<BaseLibConfig> baseLibs = new ArrayList<>();
+        private final List<ModuleConfig> addedModules = new ArrayList<>();
+        private final List<ModuleConfig> changedModules = new ArrayList<>();
+
+        private ServiceDelta(ServiceConfig serviceConfig) {
+            this.serviceConfig = serviceConfig;
+        }
+
+        boolean isEmpty() {
+            return settings.isEmpty() && baseLibs.isEmpty() && addedModules.isEmpty() && changedModules.isEmpty();
+        }
+
+        ServiceConfig getServiceConfig() {
+            return serviceConfig;
+        }
+
+        Map<String, String> getSettings() {
+            return Collections.unmodifiableMap(settings);
+        }
+
+        List<BaseLibConfig> getBaseLibs() {
+            return Collections.unmodifiableList(baseLibs);
+        }
+
+        List<ModuleConfig> getAddedModules() {
+            return Collections.unmodifiableList(addedModules);
+        }
+
+        /**
+         * @return modules whose settings changed, settings are applied as a whole
+         */
+        List<ModuleConfig> getChangedModules() {
+            return Collections.unmodifiableList(changedModules);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionsConfig;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServicesConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content of one configuration file: config.xml or a file included by &lt;include path="..."/&gt;.
+ * Fragments are immutable, so a parsed fragment is reused while its file is unchanged.
+ */
+final class ConfigFragment {
+    private final List<BaseLibConfig> baseLibs;
+    private final Map<String, String> settings;
+    @Nullable
+    private final ServicesConfig services;
+    @Nullable
+    private final ActionsConfig actions;
+    private final Map<String, Map<String, String>> settingsProfiles;
+    private final List<String> includes;
+
+    ConfigFragment(List<BaseLibConfig> baseLibs, Map<String, String> settings,
+                   @Nullable ServicesConfig services, @Nullable ActionsConfig actions,
+                   Map<String, Map<String, String>> settingsProfiles, List<String> includes) {
+        this.baseLibs = Collections.unmodifiableList(baseLibs);
+        this.settings = Collections.unmodifiableMap(settings);
+        this.services = services;
+        this.actions = actions;
+        this.settingsProfiles = Collections.unmodifiableMap(settingsProfiles);
+        this.includes = Collections.unmodifiableList(includes);
+    }
+
+    /**
+     * @return paths of included files relative to the directory of this file
+     */
+    List<String> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * Merges fragments in the given order: baseLibs, services, settings profiles and actions are appended,
+     * settings of later fragments override earlier ones. Attributes of
+     * &lt;services&gt; and &lt;actions&gt; are taken from the first fragment declaring them.
+     *
+     * @param fragments fragments by file name, the main file first
+     * @throws IllegalStateException if a service or a settings profile is declared more than once
+     */
+    static ConfigModel merge(Map<String, ConfigFragment> fragments) {
+        final ArrayList<BaseLibConfig> baseLibs = new ArrayList<>();
+        final LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+        final LinkedHashMap<String, Map<String, String>> settingsProfiles = new LinkedHashMap<>();
+        final ArrayList<BaseLibConfig> servicesBaseLibs = new ArrayList<>();
+        final ArrayList<ServiceConfig> services = new ArrayList<>();
+        final HashMap<String, String> serviceFiles = new HashMap<>();
+        final HashMap<String, String> profileFiles = new HashMap<>();
+        final ArrayList<ActionConfig> actions = new ArrayList<>();
+        ServicesConfig servicesAttributes = null;
+        ActionsConfig actionsAttributes = null;
+
+        for (final Map.Entry<String, ConfigFragment> entry : fragments.entrySet()) {
+            final ConfigFragment fragment = entry.getValue();
+            baseLibs.addAll(fragment.baseLibs);
+            settings.putAll(fragment.settings);
+            for (final Map.Entry<String, Map<String, String>> profile : fragment.settingsProfiles.entrySet()) {
+                final String declaredIn = profileFiles.putIfAbsent(profile.getKey(), entry.getKey());
+                if (declaredIn != null)
+                    throw new IllegalStateException("Settings profile '" + profile.getKey() + "' is declared in '"
+                            + declaredIn + "' and '" + entry.getKey() + "'");
+                settingsProfiles.put(profile.getKey(), profile.getValue());
+            }
+
+            if (fragment.services != null) {
+                if (servicesAttributes == null) servicesAttributes = fragment.services;
+                servicesBaseLibs.addAll(fragment.services.getBaseLibs());
+                for (final ServiceConfig service : fragment.services.getServices()) {
+                    final String declaredIn = serviceFiles.putIfAbsent(service.getName(), entry.getKey());
+                    if (declaredIn != null)
+                        throw new IllegalStateException("Service '" + service.getName() + "' is declared in '"
+                                + declaredIn + "' and '" + entry.getKey() + "'");
+                    services.add(service);
+                }
+            }
+
+            if (fragment.actions != null) {
+                if (actionsAttributes == null) actionsAttributes = fragment.actions;
+                actions.addAll(fragment.actions.getActions());
+            }
+        }
+
+        if (servicesAttributes == null) servicesAttributes = ServicesConfig.EMPTY;
+        if (actionsAttributes == null) actionsAttributes = ActionsConfig.EMPTY;
+
+        return new ConfigModel(
+                baseLibs,
+                settings,
+                new ServicesConfig(servicesAttributes.getDelay(), servicesAttributes.getOnLoad(), servicesBaseLibs,
+                        services, servicesAttributes.isParallel(), servicesAttributes.getThreads()),
+                new ActionsConfig(actionsAttributes.getDelay(), actions),
+                settingsProfiles
+        );
+    }
+}
@@ -0,0 +1,361 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionElementConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionsConfig;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServicesConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link ConfigModel}.
+ * Numbers are varints and every distinct string is written once, repeats are table indexes,
+ * so read strings are shared the same way the loader interns them.
+ */
+final class ConfigModelCodec {
+    static final int VERSION = 5;
+
+    private ConfigModelCodec() {
+    }
+
+    static void write(DataOutput out, ConfigModel model) throws IOException {
+        final Writer writer = new Writer(out);
+        writer.writeBaseLibs(model.getBaseLibs());
+        writer.writeSettings(model.getSettings());
+        writer.writeServices(model.getServices());
+        writer.writeActions(model.getActions());
+        writer.writeVarLong(model.getSettingsProfiles().size());
+        for (final Map.Entry<String, Map<String, String>> profile : model.getSettingsProfiles().entrySet()) {
+            writer.writeString(profile.getKey());
+            writer.writeSettings(profile.getValue());
+        }
+    }
+
+    /**
+     * @param limit count of bytes left in the input
+     */
+    static ConfigModel read(DataInput in, long limit) throws IOException {
+        final Reader reader = new Reader(in, limit);
+        final List<BaseLibConfig> baseLibs = reader.readBaseLibs();
+        final Map<String, String> settings = reader.readSettings();
+        final ServicesConfig services = reader.readServices();
+        final ActionsConfig actions = reader.readActions();
+
+        final int profilesCount = reader.readCount();
+        final LinkedHashMap<String, Map<String, String>> settingsProfiles = new LinkedHashMap<>();
+        for (int i = 0; i < profilesCount; i++) {
+            settingsProfiles.put(reader.readString(), reader.readSettings());
+        }
+
+        return new ConfigModel(baseLibs, settings, services, actions, settingsProfiles);
+    }
+
+    // --------------
+
+    static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void writeServices(ServicesConfig services) throws IOException {
+            writeVarLong(services.getDelay());
+            writeNullableString(services.getOnLoad());
+            writeBaseLibs(services.getBaseLibs());
+            out.writeBoolean(services.isParallel());
+            writeVarLong(services.getThreads());
+            writeVarLong(services.getServices().size());
+            for (final ServiceConfig service : services.getServices()) {
+                writeService(service);
+            }
+        }
+
+        void writeService(ServiceConfig service) throws IOException {
+            writeString(service.getName());
+            writeString(service.getType());
+            writeVarLong(service.getDelay());
+            writeNullableString(service.getOnLoad());
+            writeBaseLibs(service.getBaseLibs());
+            writeSettings(service.getSettings());
+            writeVarLong(service.getModulesDelay());
+            writeVarLong(service.getModules().size());
+            for (final ModuleConfig module : service.getModules()) {
+                writeString(module.getName());
+                writeString(module.getType());
+                writeVarLong(module.getDelay());
+                writeNullableString(module.getProfile());
+                out.writeBoolean(module.getSettings() != null);
+                if (module.getSettings() != null) writeSettings(module.getSettings());
+                writeStrings(module.getDependsOn());
+                out.writeBoolean(module.isLazy());
+            }
+            writeStrings(service.getDependsOn());
+        }
+
+        void writeActions(ActionsConfig actions) throws IOException {
+            writeVarLong(actions.getDelay());
+            writeVarLong(actions.getActions().size());
+            for (final ActionConfig action : actions.getActions()) {
+                writeString(action.getId());
+                writeVarLong(action.getDelay());
+                writeVarLong(action.getElements().size());
+                for (final ActionElementConfig element : action.getElements()) {
+                    writeString(element.getTag());
+                    writeVarLong(element.getDelay());
+                    writeString(element.getId());
+                    writeString(element.getMethod());
+                    writeString(element.getServiceName());
+                    writeString(element.getModuleName());
+                    out.writeBoolean(element.isForce());
+                }
+            }
+        }
+
+        void writeBaseLibs(List<BaseLibConfig> baseLibs) throws IOException {
+            writeVarLong(baseLibs.size());
+            for (final BaseLibConfig baseLib : baseLibs) {
+                writeBaseLib(baseLib);
+            }
+        }
+
+        void writeBaseLib(BaseLibConfig baseLib) throws IOException {
+            writeString(baseLib.getPath());
+            out.writeBoolean(baseLib.isRecursive());
+        }
+
+        void writeSettings(Map<String, String> settings) throws IOException {
+            writeVarLong(settings.size());
+            for (final Map.Entry<String, String> setting : settings.entrySet()) {
+                writeString(setting.getKey());
+                writeString(setting.getValue());
+            }
+        }
+
+        void writeStrings(List<String> list) throws IOException {
+            writeVarLong(list.size());
+            for (final String item : list) {
+                writeString(item);
+            }
+        }
+
+        void writeNullableString(@Nullable String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) writeString(value);
+        }
+
+        /**
+         * 0 and the UTF-8 bytes for a new string, index + 1 for a string written before.
+         */
+        void writeString(String value) throws IOException {
+            final Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(index + 1);
+                return;
+            }
+            strings.put(value, strings.size());
+            writeVarLong(0);
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * Counts and lengths are checked against the bytes left in the input, so broken or hostile input
+     * fails with {@link IOException} instead of allocating more than its own size.
+     */
+    static final class Reader {
+        /**
+         * Initial capacity of read collections, they grow if there are more elements
+         */
+        private static final int MAX_INITIAL_CAPACITY = 1024;
+
+        private final DataInput in;
+        private final List<String> strings = new ArrayList<>();
+        private long remaining;
+
+        /**
+         * @param limit count of bytes left in the input
+         */
+        Reader(DataInput in, long limit) {
+            this.in = in;
+            this.remaining = limit;
+        }
+
+        ServicesConfig readServices() throws IOException {
+            final long delay = readVarLong();
+            final String onLoad = readNullableString();
+            final List<BaseLibConfig> baseLibs = readBaseLibs();
+            final boolean parallel = readBoolean();
+            final int threads = readSize();
+            final int count = readCount();
+            final ArrayList<ServiceConfig> services = new ArrayList<>(capacity(count));
+            for (int i = 0; i < count; i++) {
+                services.add(readService());
+            }
+            return new ServicesConfig(delay, onLoad, baseLibs, services, parallel, threads);
+        }
+
+        ServiceConfig readService() throws IOException {
+            final String name = readString();
+            final String type = readString();
+            final long delay = readVarLong();
+            final String onLoad = readNullableString();
+            final List<BaseLibConfig> baseLibs = readBaseLibs();
+            final Map<String, String> settings = readSettings();
+            final long modulesDelay = readVarLong();
+            final int count = readCount();
+            final ArrayList<ModuleConfig> modules = new ArrayList<>(capacity(count));
+            for (int i = 0; i < count; i++) {
+                final String moduleName = readString();
+                final String moduleType = readString();
+                final long moduleDelay = readVarLong();
+                final String profile = readNullableString();
+                final Map<String, String> moduleSettings = readBoolean() ? readSettings() : null;
+                final List<String> dependsOn = readStrings();
+                modules.add(new ModuleConfig(moduleName, moduleType, moduleDelay, profile, moduleSettings,
+                        dependsOn, readBoolean()));
+            }
+            return new ServiceConfig(name, type, delay, onLoad, baseLibs, settings, modulesDelay, modules,
+                    readStrings());
+        }
+
+        ActionsConfig readActions() throws IOException {
+            final long delay = readVarLong();
+            final int count = readCount();
+            final ArrayList<ActionConfig> actions = new ArrayList<>(capacity(count));
+            for (int i = 0; i < count; i++) {
+                final String id = readString();
+                final long actionDelay = readVarLong();
+                final int elementsCount = readCount();
+                final ArrayList<ActionElementConfig> elements = new ArrayList<>(capacity(elementsCount));
+                for (int j = 0; j < elementsCount; j++) {
+                    elements.add(new ActionElementConfig(
+                            readString(),
+                            readVarLong(),
+                            readString(),
+                            readString(),
+                            readString(),
+                            readString(),
+                            readBoolean()
+                    ));
+                }
+                actions.add(new ActionConfig(id, actionDelay, elements));
+            }
+            return new ActionsConfig(delay, actions);
+        }
+
+        List<BaseLibConfig> readBaseLibs() throws IOException {
+            final int count = readCount();
+            final ArrayList<BaseLibConfig> baseLibs = new ArrayList<>(capacity(count));
+            for (int i = 0; i < count; i++) {
+                baseLibs.add(readBaseLib());
+            }
+            return baseLibs;
+        }
+
+        BaseLibConfig readBaseLib() throws IOException {
+            return new BaseLibConfig(readString(), readBoolean());
+        }
+
+        Map<String, String> readSettings() throws IOException {
+            final int count = readCount();
+            final LinkedHashMap<String, String> settings = new LinkedHashMap<>(capacity(count) * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                settings.put(readString(), readString());
+            }
+            return settings;
+        }
+
+        List<String> readStrings() throws IOException {
+            final int count = readCount();
+            final ArrayList<String> list = new ArrayList<>(capacity(count));
+            for (int i = 0; i < count; i++) {
+                list.add(readString());
+            }
+            return list;
+        }
+
+        @Nullable
+        String readNullableString() throws IOException {
+            return readBoolean() ? readString() : null;
+        }
+
+        String readString() throws IOException {
+            final int index = readSize();
+            if (index != 0) {
+                if (index > strings.size()) throw new IOException("Broken string reference " + index);
+                return strings.get(index - 1);
+            }
+            final byte[] bytes = readBytes();
+            final String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        int readSize() throws IOException {
+            final long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) throw new IOException("Broken size " + value);
+            return (int) value;
+        }
+
+        /**
+         * @return count of elements or bytes which follow, every one takes at least a byte
+         */
+        int readCount() throws IOException {
+            final int count = readSize();
+            if (count > remaining) throw new IOException("Broken count " + count + ", " + remaining + " bytes left");
+            return count;
+        }
+
+        byte[] readBytes() throws IOException {
+            final byte[] bytes = new byte[readCount()];
+            in.readFully(bytes);
+            remaining -= bytes.length;
+            return bytes;
+        }
+
+        boolean readBoolean() throws IOException {
+            remaining--;
+            return in.readBoolean();
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                remaining--;
+                final byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Broken varint");
+        }
+
+        private static int capacity(int count) {
+            return Math.min(count, MAX_INITIAL_CAPACITY);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiled configuration stored on disk: the parsed model keyed by the SHA-256 of config.xml and of every
+ * included file, and the resolved URLs of recursive baseLibs keyed by canonical path and modification times
+ * of the jars.
+ */
+final class ConfigSnapshot {
+    private static final int MAGIC = 0x4A43534E;
+
+    private final byte[] configHash;
+    private final Map<String, byte[]> includedHashes;
+    private final ConfigModel model;
+    private final Map<String, LibraryResolver.Resolution> libs;
+
+    private ConfigSnapshot(byte[] configHash, Map<String, byte[]> includedHashes, ConfigModel model,
+                           Map<String, LibraryResolver.Resolution> libs) {
+        this.configHash = configHash;
+        this.includedHashes = Collections.unmodifiableMap(includedHashes);
+        this.model = model;
+        this.libs = Collections.unmodifiableMap(libs);
+    }
+
+    static ConfigSnapshot create(byte[] configHash, Map<String, byte[]> includedHashes, ConfigModel model,
+                                 Map<String, LibraryResolver.Resolution> libs) {
+        return new ConfigSnapshot(configHash, includedHashes, model, libs);
+    }
+
+    /**
+     * @return true if config.xml has the given hash and none of the included files changed
+     */
+    boolean matches(byte[] configHash) {
+        if (!Arrays.equals(this.configHash, configHash)) return false;
+        for (final Map.Entry<String, byte[]> included : includedHashes.entrySet()) {
+            final Path path = new File(included.getKey()).toPath();
+            try {
+                if (!Arrays.equals(included.getValue(), hash(Files.readAllBytes(path)))) return false;
+            } catch (IOException ignored) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Map<String, byte[]> getIncludedHashes() {
+        return includedHashes;
+    }
+
+    ConfigModel getModel() {
+        return model;
+    }
+
+    Map<String, LibraryResolver.Resolution> getLibs() {
+        return libs;
+    }
+
+    // --------------
+
+    /**
+     * @return snapshot or null if the file does not exist or has another format version
+     */
+    @Nullable
+    static ConfigSnapshot read(File file) throws IOException {
+        if (!file.exists()) return null;
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readInt() != ConfigModelCodec.VERSION) return null;
+
+        final byte[] configHash = readHash(in);
+        final ConfigModel model = ConfigModelCodec.read(in, bytes.length);
+
+        final ConfigModelCodec.Reader reader = new ConfigModelCodec.Reader(in, bytes.length);
+        final int includedCount = reader.readCount();
+        final LinkedHashMap<String, byte[]> includedHashes = new LinkedHashMap<>();
+        for (int i = 0; i < includedCount; i++) {
+            includedHashes.put(reader.readString(), readHash(in));
+        }
+
+        final int libsCount = reader.readCount();
+        final LinkedHashMap<String, LibraryResolver.Resolution> libs = new LinkedHashMap<>();
+        for (int i = 0; i < libsCount; i++) {
+            final String canonicalPath = reader.readString();
+            final int jarsCount = reader.readCount();
+            final LinkedHashMap<String, Long> jarsModified = new LinkedHashMap<>();
+            for (int j = 0; j < jarsCount; j++) {
+                jarsModified.put(reader.readString(), in.readLong());
+            }
+            final int urlsCount = reader.readCount();
+            final ArrayList<URL> urls = new ArrayList<>();
+            for (int j = 0; j < urlsCount; j++) {
+                urls.add(new URL(reader.readString()));
+            }
+            libs.put(canonicalPath, new LibraryResolver.Resolution(urls, jarsModified));
+        }
+
+        return new ConfigSnapshot(configHash, includedHashes, model, libs);
+    }
+
+    private static byte[] readHash(DataInputStream in) throws IOException {
+        final byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        return hash;
+    }
+
+    /**
+     * Writes to a temporary file first, so a crash never leaves a broken snapshot.
+     */
+    void write(File file) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(file.getName() + ".tmp");
+
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            final DataOutputStream out = new DataOutputStream(outputStream);
+            out.writeInt(MAGIC);
+            out.writeInt(ConfigModelCodec.VERSION);
+            out.writeByte(configHash.length);
+            out.write(configHash);
+            ConfigModelCodec.write(out, model);
+
+            final ConfigModelCodec.Writer writer = new ConfigModelCodec.Writer(out);
+            writer.writeVarLong(includedHashes.size());
+            for (final Map.Entry<String, byte[]> included : includedHashes.entrySet()) {
+                writer.writeString(included.getKey());
+                out.writeByte(included.getValue().length);
+                out.write(included.getValue());
+            }
+
+            writer.writeVarLong(libs.size());
+            for (final Map.Entry<String, LibraryResolver.Resolution> entry : libs.entrySet()) {
+                writer.writeString(entry.getKey());
+                writer.writeVarLong(entry.getValue().getJarsModified().size());
+                for (final Map.Entry<String, Long> jar : entry.getValue().getJarsModified().entrySet()) {
+                    writer.writeString(jar.getKey());
+                    out.writeLong(jar.getValue());
+                }
+                writer.writeVarLong(entry.getValue().getUrls().size());
+                for (final URL url : entry.getValue().getUrls()) {
+                    writer.writeString(url.toString());
+                }
+            }
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ignored) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static byte[] hash(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException(noSuchAlgorithmException);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.logger.ILogger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serves the loaded configuration to {@link ConfigSubscription}s of other server instances on a loopback port.
+ * A subscriber gets the whole {@link ModelParts} once, then only the parts changed since the last frame
+ * it got, so a slow subscriber gets one delta for several publications.
+ * <p>
+ * Handshake: both sides write {@link #MAGIC}, {@link ConfigModelCodec#VERSION} and a nonce, then prove
+ * they know the {@link DistributionKey}, the subscriber first. The subscriber then writes the source id
+ * and revision it has. Frames: length, source id, revision and a delta against the previous frame
+ * or against nothing if it is the first one, followed by the signature of the frame.
+ */
+final class ConfigSource implements Closeable {
+    static final int MAGIC = 0x4A43444E;
+    static final int MAX_FRAME = 16 * 1024 * 1024;
+    /**
+     * Time to complete the handshake in, a connection which never completes it is dropped
+     */
+    static final int HANDSHAKE_TIMEOUT = 10_000;
+
+    private final long sourceId = ThreadLocalRandom.current().nextLong();
+    private final DistributionKey key;
+    private final ILogger logger;
+    private final ServerSocket serverSocket;
+    private final ThreadFactory threadFactory = AsyncEngine.daemonThreadFactory("Configurator-source");
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private Published published = null;
+    private volatile boolean closed = false;
+
+    /**
+     * @param port 0 for any free port
+     */
+    ConfigSource(int port, DistributionKey key, ILogger logger) throws IOException {
+        this.key = key;
+        this.logger = logger;
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 50);
+        threadFactory.newThread(this::accept).start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getSubscriberCount() {
+        return sockets.size();
+    }
+
+    synchronized long getRevision() {
+        return published == null ? 0 : published.revision;
+    }
+
+    /**
+     * Sends the model to all subscribers unless it is equal to the published one.
+     */
+    void publish(ConfigModel model) throws IOException {
+        final ModelParts parts = ModelParts.split(model);
+        if (parts.byteCount() > MAX_FRAME)
+            throw new IOException("Configuration of " + parts.byteCount() + " bytes exceeds " + MAX_FRAME + " bytes");
+        synchronized (this) {
+            if (published != null && published.parts.sameAs(parts)) return;
+            final long revision = published == null ? 1 : published.revision + 1;
+            published = new Published(revision, parts);
+            notifyAll();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ioException) {
+                if (!closed) logger.writeError("Configuration source stopped accepting: " + ioException);
+                return;
+            }
+            sockets.add(socket);
+            threadFactory.newThread(() -> serve(socket)).start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final byte[] sourceNonce = DistributionKey.nonce();
+            out.writeInt(MAGIC);
+            out.writeInt(ConfigModelCodec.VERSION);
+            out.write(sourceNonce);
+            out.flush();
+            if (in.readInt() != MAGIC || in.readInt() != ConfigModelCodec.VERSION) {
+                logger.writeWarn("Subscriber " + socket.getRemoteSocketAddress() + " has another format version");
+                return;
+            }
+            final byte[] subscriberNonce = new byte[DistributionKey.NONCE_LENGTH];
+            in.readFully(subscriberNonce);
+            final byte[] proof = new byte[DistributionKey.MAC_LENGTH];
+            in.readFully(proof);
+            DistributionKey.verify(key.proof("subscriber", sourceNonce, subscriberNonce), proof, "subscriber proof");
+            out.write(key.proof("source", sourceNonce, subscriberNonce));
+            out.flush();
+
+            final long knownSourceId = in.readLong();
+            final long knownRevision = in.readLong();
+            socket.setSoTimeout(0);
+            final DistributionKey.Session session = key.session(sourceNonce, subscriberNonce);
+
+            Published sent = null;
+            synchronized (this) {
+                if (published != null && knownSourceId == sourceId && knownRevision == published.revision) {
+                    sent = published;
+                }
+            }
+            logger.writeInfo("Subscriber " + socket.getRemoteSocketAddress() + " connected"
+                    + (sent == null ? "" : ", up to date"));
+
+            while (!closed) {
+                final Published next = awaitNext(sent);
+                if (next == null) return;
+                writeFrame(out, session, next, sent);
+                sent = next;
+            }
+        } catch (SocketException ignored) {
+        } catch (IOException | RuntimeException exception) {
+            if (!closed) logger.writeWarn("Subscriber " + socket.getRemoteSocketAddress() + " failed: " + exception);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return the latest publication once it is not the sent one, null if closed
+     */
+    @Nullable
+    private synchronized Published awaitNext(@Nullable Published sent) throws InterruptedException {
+        while (!closed && (published == null || published == sent)) {
+            wait();
+        }
+        return closed ? null : published;
+    }
+
+    private void writeFrame(DataOutputStream out, DistributionKey.Session session, Published next,
+                            @Nullable Published sent) throws IOException {
+        final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        final DataOutputStream frameOut = new DataOutputStream(frame);
+        frameOut.writeLong(sourceId);
+        frameOut.writeLong(next.revision);
+        frameOut.writeBoolean(sent == null);
+        next.parts.writeDelta(frameOut, sent == null ? null : sent.parts);
+        frameOut.flush();
+        if (frame.size() > MAX_FRAME) throw new IOException("Frame of " + frame.size() + " bytes is too large");
+
+        final byte[] bytes = frame.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.write(session.sign(bytes, bytes.length));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        serverSocket.close();
+        for (final Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Published {
+        private final long revision;
+        private final ModelParts parts;
+
+        private Published(long revision, ModelParts parts) {
+            this.revision = revision;
+            this.parts = parts;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.logger.ILogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Receives the configuration from a {@link ConfigSource} on a loopback port and calls the listener with
+ * every received model. Reconnects until closed, a reconnect to the same source gets only what changed.
+ * Frames which are not signed with the {@link DistributionKey} are not applied.
+ */
+final class ConfigSubscription implements Closeable {
+    private static final long MIN_RECONNECT_DELAY = 100;
+    private static final long MAX_RECONNECT_DELAY = 5_000;
+
+    interface Listener {
+        void onModel(ConfigModel model) throws Throwable;
+    }
+
+    private final int port;
+    private final DistributionKey key;
+    private final Listener listener;
+    private final ILogger logger;
+    private final Thread thread;
+    private volatile Socket socket = null;
+    private volatile boolean closed = false;
+    private ModelParts parts = ModelParts.EMPTY;
+    private long sourceId = 0;
+    private volatile long revision = 0;
+
+    ConfigSubscription(int port, DistributionKey key, Listener listener, ILogger logger) {
+        this.port = port;
+        this.key = key;
+        this.listener = listener;
+        this.logger = logger;
+
+        thread = new Thread(this::run, "Configurator-subscription");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    long getRevision() {
+        return revision;
+    }
+
+    boolean isConnected() {
+        return socket != null;
+    }
+
+    private void run() {
+        long reconnectDelay = MIN_RECONNECT_DELAY;
+        while (!closed) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                // while nothing listens, a connection to a port of the ephemeral range may connect to itself
+                // and hold the port the source is restarted on
+                if (socket.getLocalPort() == port) throw new IOException("Connection refused");
+                this.socket = socket;
+                if (closed) return;
+                reconnectDelay = MIN_RECONNECT_DELAY;
+                receive(socket);
+            } catch (IOException | RuntimeException exception) {
+                // a broken frame is not applied, the source sends everything again after reconnecting
+                if (closed) return;
+                if (reconnectDelay == MIN_RECONNECT_DELAY) {
+                    logger.writeWarn("Connection to the configuration source on port " + port + " failed: " + exception);
+                }
+            } finally {
+                this.socket = null;
+            }
+
+            try {
+                Thread.sleep(reconnectDelay);
+            } catch (InterruptedException ignored) {
+                return;
+            }
+            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+        }
+    }
+
+    private void receive(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(ConfigSource.HANDSHAKE_TIMEOUT);
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        final byte[] subscriberNonce = DistributionKey.nonce();
+        out.writeInt(ConfigSource.MAGIC);
+        out.writeInt(ConfigModelCodec.VERSION);
+        out.write(subscriberNonce);
+        out.flush();
+        if (in.readInt() != ConfigSource.MAGIC || in.readInt() != ConfigModelCodec.VERSION)
+            throw new IOException("Configuration source has another format version");
+        final byte[] sourceNonce = new byte[DistributionKey.NONCE_LENGTH];
+        in.readFully(sourceNonce);
+        out.write(key.proof("subscriber", sourceNonce, subscriberNonce));
+        out.flush();
+        final byte[] proof = new byte[DistributionKey.MAC_LENGTH];
+        in.readFully(proof);
+        DistributionKey.verify(key.proof("source", sourceNonce, subscriberNonce), proof, "source proof");
+
+        out.writeLong(sourceId);
+        out.writeLong(revision);
+        out.flush();
+        socket.setSoTimeout(0);
+        final DistributionKey.Session session = key.session(sourceNonce, subscriberNonce);
+        logger.writeInfo("Subscribed to the configuration source on port " + port);
+
+        final byte[] signature = new byte[DistributionKey.MAC_LENGTH];
+        while (!closed) {
+            final int length = in.readInt();
+            if (length < 0 || length > ConfigSource.MAX_FRAME) throw new IOException("Broken frame length " + length);
+            final byte[] frame = new byte[length];
+            in.readFully(frame);
+            in.readFully(signature);
+            DistributionKey.verify(session.sign(frame, length), signature, "frame signature");
+
+            final DataInputStream frameIn = new DataInputStream(new ByteArrayInputStream(frame));
+            final long frameSourceId = frameIn.readLong();
+            final long frameRevision = frameIn.readLong();
+            final boolean full = frameIn.readBoolean();
+            if (!full && frameSourceId != sourceId)
+                throw new IOException("Delta of an unknown configuration source");
+
+            final ModelParts received = (full ? ModelParts.EMPTY : parts).readDelta(frameIn, frameIn.available());
+            final ConfigModel model = received.join();
+            parts = received;
+            sourceId = frameSourceId;
+            revision = frameRevision;
+
+            try {
+                listener.onModel(model);
+            } catch (Throwable throwable) {
+                logger.writeError("Failed to apply configuration revision " + frameRevision + ": " + throwable);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        final Socket socket = this.socket;
+        if (socket != null) socket.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.logger.ILogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Watches the configuration files and calls the listener once a burst of writes is over.
+ * Directories are watched, so editors replacing a file by rename are detected too.
+ */
+final class ConfigWatcher implements Closeable {
+    private volatile Set<Path> files = Collections.emptySet();
+    private final Set<Path> directories = new HashSet<>();
+    private final long debounceMillis;
+    private final Runnable listener;
+    private final AsyncEngine engine;
+    private final ILogger logger;
+    private final WatchService watchService;
+    private final Thread thread;
+    private ScheduledFuture<?> pending = null;
+
+    ConfigWatcher(Collection<Path> files, long debounceMillis, Runnable listener, AsyncEngine engine,
+                  ILogger logger) throws IOException {
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        this.engine = engine;
+        this.logger = logger;
+
+        watchService = files.iterator().next().getFileSystem().newWatchService();
+        setFiles(files);
+
+        thread = new Thread(this::watch, "Configurator-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replaces the watched files, e.g. after includes of the configuration changed.
+     */
+    synchronized void setFiles(Collection<Path> files) throws IOException {
+        final HashSet<Path> absoluteFiles = new HashSet<>();
+        for (final Path file : files) {
+            final Path absoluteFile = file.toAbsolutePath().normalize();
+            absoluteFiles.add(absoluteFile);
+            if (directories.add(absoluteFile.getParent())) {
+                absoluteFile.getParent().register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+        this.files = absoluteFiles;
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watchService.take();
+                final Path directory = (Path) key.watchable();
+                final Set<Path> files = this.files;
+                boolean changed = false;
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                            files.contains(directory.resolve((Path) event.context()))) {
+                        changed = true;
+                    }
+                }
+                if (!key.reset()) {
+                    logger.writeWarn("\"" + directory + "\" is not accessible, changes are not watched");
+                    synchronized (this) {
+                        directories.remove(directory);
+                    }
+                    continue;
+                }
+                if (changed) schedule();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private synchronized void schedule() {
+        if (pending != null) pending.cancel(false);
+        pending = engine.schedule(listener, debounceMillis);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (pending != null) pending.cancel(false);
+        thread.interrupt();
+        watchService.close();
+    }
+}
@@ -0,0 +1,473 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.IServerControl;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServicesConfig;
+import com.pro100kryto.server.logger.ILogger;
+import com.pro100kryto.server.module.IModule;
+import com.pro100kryto.server.service.IServiceControl;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Applies a {@link ConfigModel}: baseLibs, settings, services and modules.
+ */
+final class ConfigurationExecutor {
+    private static final String NODE_SERVICE = "service:";
+    private static final String NODE_MODULE = "module:";
+    private static final String NODE_LOADED = "onLoad:";
+
+    private final IServerControl serverControl;
+    private final ILogger logger;
+    private final AsyncEngine engine;
+    private final ActionExecutor actionExecutor;
+    private final TargetRegistry registry;
+    private final LibraryResolver libraryResolver;
+    private final ConfiguratorMetrics metrics;
+    private final TargetLocks locks;
+    private final LazyModules lazyModules;
+
+    ConfigurationExecutor(IServerControl serverControl, ILogger logger, AsyncEngine engine,
+                          ActionExecutor actionExecutor, TargetRegistry registry,
+                          LibraryResolver libraryResolver, ConfiguratorMetrics metrics, TargetLocks locks,
+                          LazyModules lazyModules) {
+        this.serverControl = serverControl;
+        this.logger = logger;
+        this.engine = engine;
+        this.actionExecutor = actionExecutor;
+        this.registry = registry;
+        this.libraryResolver = libraryResolver;
+        this.metrics = metrics;
+        this.locks = locks;
+        this.lazyModules = lazyModules;
+    }
+
+    /**
+     * @param span traced run which gets the steps as children
+     * @param token execution which is not continued once it is completed or cancelled
+     */
+    CompletableFuture<Void> execConfiguration(ConfigModel model, ActionIndex actionIndex, TraceSpan span,
+                                              CompletableFuture<?> token) {
+        final ServicesConfig servicesConfig = model.getServices();
+        final Executor workers = engine.getWorkers();
+
+        final ArrayList<BaseLibConfig> allBaseLibs = new ArrayList<>(model.getBaseLibs());
+        allBaseLibs.addAll(servicesConfig.getBaseLibs());
+        for (final ServiceConfig serviceConfig : servicesConfig.getServices()) {
+            allBaseLibs.addAll(serviceConfig.getBaseLibs());
+        }
+
+        final long prefetchStartNanos = metrics.start();
+        return span.child(TraceSpan.Kind.LIBS, "prefetchLibs").end(
+                metrics.record(ConfiguratorMetrics.PHASE, "prefetchLibs", prefetchStartNanos,
+                        libraryResolver.prefetch(allBaseLibs, workers))).thenCompose(ignored -> engine.run(() -> {
+            // server - baseLibs
+            long startNanos = metrics.start();
+            span.child(TraceSpan.Kind.LIBS, "server").run(() -> {
+                for (final URL url : libraryResolver.resolveDistinct(model.getBaseLibs())) {
+                    serverControl.addBaseLib(url);
+                }
+            });
+            metrics.record(ConfiguratorMetrics.PHASE, "addBaseLibs", startNanos);
+
+            // server - settings
+            startNanos = metrics.start();
+            span.child(TraceSpan.Kind.SETTINGS, "server").run(() -> {
+                for (final Map.Entry<String, String> setting : model.getSettings().entrySet()) {
+                    serverControl.setSetting(setting.getKey(), setting.getValue());
+                }
+            });
+            metrics.record(ConfiguratorMetrics.PHASE, "setSettings", startNanos);
+        }, workers, token))
+
+                // server - services
+                .thenCompose(ignored -> engine.delay(servicesConfig.getDelay(), span, "services", token))
+
+                // server - services - baseLibs
+                .thenCompose(ignored -> engine.run(() -> {
+                    final long startNanos = metrics.start();
+                    span.child(TraceSpan.Kind.LIBS, "services").run(() -> {
+                        for (final URL url : libraryResolver.resolveDistinct(servicesConfig.getBaseLibs())) {
+                            serverControl.getServiceManager().addBaseLib(url);
+                        }
+                    });
+                    metrics.record(ConfiguratorMetrics.PHASE, "addBaseLibs", startNanos);
+                }, workers, token))
+
+                // server -  services - service
+                .thenCompose(ignored -> servicesConfig.isParallel() ?
+                        execServicesParallel(model, actionIndex, span, token) :
+                        execServicesSerial(model, actionIndex, span, token))
+
+                .thenCompose(ignored -> execOnLoad(servicesConfig.getOnLoad(), actionIndex, span, token))
+                .whenComplete((ignored, throwable) -> logger.writeInfo(libraryResolver.getStats()));
+    }
+
+    private CompletableFuture<Void> execServicesSerial(ConfigModel model, ActionIndex actionIndex, TraceSpan span,
+                                                       CompletableFuture<?> token) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (final ServiceConfig serviceConfig : model.getServices().getServices()) {
+            chain = chain.thenCompose(ignored -> execService(model, serviceConfig, actionIndex, span, token));
+        }
+        return chain;
+    }
+
+    private CompletableFuture<Void> execService(ConfigModel model, ServiceConfig serviceConfig,
+                                                ActionIndex actionIndex, TraceSpan parent, CompletableFuture<?> token) {
+        final Executor workers = engine.getWorkers();
+        final TraceSpan span = parent.child(TraceSpan.Kind.SERVICE, serviceConfig.getName());
+        return span.end(createService(serviceConfig, workers, span, token)
+                .thenCompose(serviceControl -> {
+                    CompletableFuture<Void> modulesChain = CompletableFuture.completedFuture(null);
+                    for (final ModuleConfig moduleConfig : serviceConfig.getModules()) {
+                        modulesChain = modulesChain.thenCompose(ignored -> createModule(model, serviceControl,
+                                serviceConfig, moduleConfig, workers, span, token));
+                    }
+                    return modulesChain;
+                })
+                .thenCompose(ignored -> execOnLoad(serviceConfig.getOnLoad(), actionIndex, span, token)));
+    }
+
+    /**
+     * Every service, module and service onLoad is a node of a dependency graph.
+     * Nodes without pending dependencies are executed concurrently, a failed node
+     * skips all nodes depending on it. Falls back to the serial order on cycles.
+     */
+    private CompletableFuture<Void> execServicesParallel(ConfigModel model, ActionIndex actionIndex,
+                                                         TraceSpan span, CompletableFuture<?> token) {
+        final ServicesConfig servicesConfig = model.getServices();
+        final DependencyGraph graph = new DependencyGraph();
+        final Map<String, NodeTask> tasks = new HashMap<>();
+        final Map<String, IServiceControl> serviceControls = new ConcurrentHashMap<>();
+
+        final int threads = servicesConfig.getThreads() > 0 ?
+                servicesConfig.getThreads() :
+                Runtime.getRuntime().availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+                AsyncEngine.daemonThreadFactory("Configurator-bootstrap"));
+
+        for (final ServiceConfig serviceConfig : servicesConfig.getServices()) {
+            final String serviceNodeId = serviceNodeId(serviceConfig.getName());
+            final String loadedNodeId = loadedNodeId(serviceConfig.getName());
+            graph.addNode(serviceNodeId);
+            tasks.put(serviceNodeId, () -> {
+                final TraceSpan serviceSpan = span.child(TraceSpan.Kind.SERVICE, serviceConfig.getName());
+                return serviceSpan.end(createService(serviceConfig, executor, serviceSpan, token)
+                        .thenAccept(serviceControl -> serviceControls.put(serviceConfig.getName(), serviceControl)));
+            });
+
+            for (final ModuleConfig moduleConfig : serviceConfig.getModules()) {
+                final String moduleNodeId = moduleNodeId(serviceConfig.getName(), moduleConfig.getName());
+                graph.addDependency(moduleNodeId, serviceNodeId);
+                graph.addDependency(loadedNodeId, moduleNodeId);
+                tasks.put(moduleNodeId, () -> createModule(model,
+                        serviceControls.get(serviceConfig.getName()), serviceConfig, moduleConfig, executor, span,
+                        token));
+            }
+
+            graph.addDependency(loadedNodeId, serviceNodeId);
+            tasks.put(loadedNodeId, () -> execOnLoad(serviceConfig.getOnLoad(), actionIndex, span, token));
+        }
+
+        for (final ServiceConfig serviceConfig : servicesConfig.getServices()) {
+            for (final String dependsOn : serviceConfig.getDependsOn()) {
+                addDependency(graph, serviceNodeId(serviceConfig.getName()), loadedNodeId(dependsOn));
+            }
+            for (final ModuleConfig moduleConfig : serviceConfig.getModules()) {
+                for (final String dependsOn : moduleConfig.getDependsOn()) {
+                    addDependency(graph,
+                            moduleNodeId(serviceConfig.getName(), moduleConfig.getName()),
+                            dependsOn.contains("/") ?
+                                    NODE_MODULE + dependsOn :
+                                    moduleNodeId(serviceConfig.getName(), dependsOn));
+                }
+            }
+        }
+
+        final List<String> cycle = graph.findCycle();
+        if (cycle != null) {
+            executor.shutdown();
+            logger.writeWarn("Cycle in \"dependsOn\": " + cycle + ", falling back to serial bootstrap");
+            return execServicesSerial(model, actionIndex, span, token);
+        }
+
+        final LinkedHashMap<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (final String nodeId : graph.topologicalOrder()) {
+            final Set<String> dependencies = graph.getDependencies(nodeId);
+            final CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.size()];
+            int i = 0;
+            for (final String dependencyId : dependencies) {
+                dependencyFutures[i++] = futures.get(dependencyId);
+            }
+
+            final NodeTask task = tasks.get(nodeId);
+            futures.put(nodeId, CompletableFuture.allOf(dependencyFutures)
+                    .handle((ignored, throwable) -> throwable)
+                    .thenCompose(dependencyFailure -> {
+                        if (dependencyFailure != null) throw new SkippedNodeException();
+                        return task.start();
+                    }));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, throwable) -> {
+                    executor.shutdown();
+                    reportParallelFailures(futures);
+                    return null;
+                });
+    }
+
+    private void reportParallelFailures(Map<String, CompletableFuture<Void>> futures) {
+        final ArrayList<Throwable> failures = new ArrayList<>();
+        int skipped = 0;
+
+        for (final Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            if (!entry.getValue().isCompletedExceptionally()) continue;
+            try {
+                entry.getValue().join();
+            } catch (Throwable throwable) {
+                final Throwable cause = AsyncEngine.unwrap(throwable);
+                if (cause instanceof SkippedNodeException) {
+                    skipped++;
+                    logger.writeWarn("\"" + entry.getKey() + "\" skipped, a dependency failed");
+                } else {
+                    failures.add(cause);
+                    logger.writeError("\"" + entry.getKey() + "\" failed: " + cause);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            final IllegalStateException exception = new IllegalStateException(
+                    "Parallel bootstrap failed: " + failures.size() + " failed, " + skipped + " skipped");
+            for (final Throwable failure : failures) {
+                exception.addSuppressed(failure);
+            }
+            throw new CompletionException(exception);
+        }
+    }
+
+    private void addDependency(DependencyGraph graph, String nodeId, String dependsOnNodeId) {
+        if (!graph.contains(dependsOnNodeId)) {
+            logger.writeWarn("\"" + nodeId + "\" depends on unknown \"" + dependsOnNodeId + "\", ignored");
+            return;
+        }
+        graph.addDependency(nodeId, dependsOnNodeId);
+    }
+
+    private CompletableFuture<IServiceControl> createService(ServiceConfig serviceConfig, Executor executor,
+                                                             TraceSpan span, CompletableFuture<?> token) {
+        return engine.delay(serviceConfig.getDelay(), span, "service", token)
+                .thenCompose(ignored -> engine.supply(() -> locks.supplyWithService(serviceConfig.getName(), () -> {
+                    final long serviceStartNanos = metrics.start();
+                    // created by an earlier execution which failed later, reused with the settings of this one
+                    final IServiceControl registered = registry.getService(serviceConfig.getName());
+                    final IServiceControl serviceControl;
+                    if (registered != null) {
+                        serviceControl = registered;
+                    } else {
+                        serviceControl = span.child(TraceSpan.Kind.CREATE, serviceConfig.getName())
+                                .supply(() -> serverControl.getServiceManager()
+                                        .createService(serviceConfig.getType(), serviceConfig.getName()));
+                        registry.registerService(serviceConfig.getName(), serviceControl);
+                        metrics.record(ConfiguratorMetrics.PHASE, "createService", serviceStartNanos);
+                    }
+
+                    // server - services - service - baseLibs
+                    long startNanos = metrics.start();
+                    span.child(TraceSpan.Kind.LIBS, serviceConfig.getName()).run(() -> {
+                        for (final URL url : libraryResolver.resolveDistinct(serviceConfig.getBaseLibs())) {
+                            serviceControl.addBaseLib(url);
+                        }
+                    });
+                    metrics.record(ConfiguratorMetrics.PHASE, "addBaseLibs", startNanos);
+
+                    // server - services - service - settings
+                    startNanos = metrics.start();
+                    span.child(TraceSpan.Kind.SETTINGS, serviceConfig.getName()).run(() -> {
+                        for (final Map.Entry<String, String> setting : serviceConfig.getSettings().entrySet()) {
+                            serviceControl.setSetting(setting.getKey(), setting.getValue());
+                        }
+                    });
+                    metrics.record(ConfiguratorMetrics.PHASE, "setSettings", startNanos);
+
+                    metrics.record(ConfiguratorMetrics.SERVICE, serviceConfig.getName(), serviceStartNanos);
+                    return serviceControl;
+                }), executor, token));
+    }
+
+    private CompletableFuture<Void> createModule(ConfigModel model, IServiceControl serviceControl,
+                                                 ServiceConfig serviceConfig, ModuleConfig moduleConfig,
+                                                 Executor executor, TraceSpan parent, CompletableFuture<?> token) {
+        if (moduleConfig.isLazy()) {
+            if (registry.getModule(serviceConfig.getName(), moduleConfig.getName()) != null)
+                return CompletableFuture.completedFuture(null);
+            // created by the first start action or XmlConfigurator.createLazyModule
+            lazyModules.register(serviceConfig.getName(), moduleConfig.getName(),
+                    () -> instantiateModule(model, serviceControl, serviceConfig, moduleConfig, TraceSpan.NONE));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final TraceSpan span = parent.child(TraceSpan.Kind.MODULE,
+                serviceConfig.getName() + "/" + moduleConfig.getName());
+        return span.end(engine.run(() -> instantiateModule(model, serviceControl, serviceConfig, moduleConfig, span),
+                        executor, token)
+                .thenCompose(ignored -> engine.delay(moduleConfig.getDelay(), span, "module", token))
+                .thenCompose(ignored -> engine.delay(serviceConfig.getModulesDelay(), span, "modules", token)));
+    }
+
+    private IModule instantiateModule(ConfigModel model, IServiceControl serviceControl,
+                                      ServiceConfig serviceConfig, ModuleConfig moduleConfig, TraceSpan span)
+            throws Throwable {
+        final Map<String, String> settings = model.getModuleSettings(moduleConfig);
+        return locks.supplyWithModule(serviceConfig.getName(), moduleConfig.getName(), () -> {
+            final long moduleStartNanos = metrics.start();
+            final IModule registered = registry.getModule(serviceConfig.getName(), moduleConfig.getName());
+            final IModule module;
+            if (registered != null) {
+                module = registered;
+            } else {
+                module = span.child(TraceSpan.Kind.CREATE, moduleConfig.getName())
+                        .supply(() -> serviceControl.createModule(moduleConfig.getType(), moduleConfig.getName()));
+                registry.registerModule(serviceConfig.getName(), moduleConfig.getName(), module);
+                metrics.record(ConfiguratorMetrics.PHASE, "createModule", moduleStartNanos);
+            }
+
+            if (settings != null) {
+                final long startNanos = metrics.start();
+                span.child(TraceSpan.Kind.SETTINGS, moduleConfig.getName())
+                        .run(() -> module.setSettings(new CopyOnWriteMap<>(settings)));
+                metrics.record(ConfiguratorMetrics.PHASE, "setSettings", startNanos);
+            }
+            metrics.record(ConfiguratorMetrics.MODULE,
+                    serviceConfig.getName() + "/" + moduleConfig.getName(), moduleStartNanos);
+            return module;
+        });
+    }
+
+    // -------------- hot reload
+
+    /**
+     * Applies only the delta: new baseLibs, changed settings, new services and modules.
+     * Changes which need a restart are reported and skipped.
+     */
+    CompletableFuture<Void> applyDiff(ConfigDiff diff, ActionIndex actionIndex, CompletableFuture<?> token) {
+        for (final String notApplicable : diff.getNotApplicable()) {
+            logger.writeWarn("Not applied in place, restart required: " + notApplicable);
+        }
+
+        final Executor workers = engine.getWorkers();
+        CompletableFuture<Void> chain = engine.run(() -> {
+            for (final URL url : libraryResolver.resolveDistinct(diff.getServerBaseLibs())) {
+                serverControl.addBaseLib(url);
+            }
+            for (final Map.Entry<String, String> setting : diff.getServerSettings().entrySet()) {
+                serverControl.setSetting(setting.getKey(), setting.getValue());
+            }
+            for (final URL url : libraryResolver.resolveDistinct(diff.getServicesBaseLibs())) {
+                serverControl.getServiceManager().addBaseLib(url);
+            }
+
+            for (final ConfigDiff.ServiceDelta delta : diff.getChangedServices()) {
+                final String serviceName = delta.getServiceConfig().getName();
+                final IServiceControl serviceControl = registry.getService(serviceName);
+                if (serviceControl == null) {
+                    logger.writeWarn("Service \"" + serviceName + "\" was not created by the configurator, skipped");
+                    continue;
+                }
+
+                locks.runWithService(serviceName, () -> {
+                    for (final URL url : libraryResolver.resolveDistinct(delta.getBaseLibs())) {
+                        serviceControl.addBaseLib(url);
+                    }
+                    for (final Map.Entry<String, String> setting : delta.getSettings().entrySet()) {
+                        serviceControl.setSetting(setting.getKey(), setting.getValue());
+                    }
+                    for (final ModuleConfig moduleConfig : delta.getChangedModules()) {
+                        final IModule module = registry.getModule(serviceName, moduleConfig.getName());
+                        if (module == null && lazyModules.isPending(serviceName, moduleConfig.getName())) {
+                            lazyModules.register(serviceName, moduleConfig.getName(), () -> instantiateModule(
+                                    diff.getModel(), serviceControl, delta.getServiceConfig(), moduleConfig,
+                                    TraceSpan.NONE));
+                            continue;
+                        }
+                        if (module == null) {
+                            logger.writeWarn("Module \"" + serviceName + "/" + moduleConfig.getName()
+                                    + "\" was not created by the configurator, skipped");
+                            continue;
+                        }
+                        module.setSettings(new CopyOnWriteMap<>(diff.getModel().getModuleSettings(moduleConfig)));
+                    }
+                });
+            }
+        }, workers, token);
+
+        for (final ConfigDiff.ServiceDelta delta : diff.getChangedServices()) {
+            final ServiceConfig serviceConfig = delta.getServiceConfig();
+            for (final ModuleConfig moduleConfig : delta.getAddedModules()) {
+                chain = chain.thenCompose(ignored -> {
+                    final IServiceControl serviceControl = registry.getService(serviceConfig.getName());
+                    if (serviceControl == null) return CompletableFuture.completedFuture(null);
+                    return createModule(diff.getModel(), serviceControl, serviceConfig, moduleConfig, workers,
+                            TraceSpan.NONE, token);
+                });
+            }
+        }
+
+        for (final ServiceConfig serviceConfig : diff.getAddedServices()) {
+            chain = chain.thenCompose(ignored -> execService(diff.getModel(), serviceConfig, actionIndex,
+                    TraceSpan.NONE, token));
+        }
+
+        return chain;
+    }
+
+    private CompletableFuture<Void> execOnLoad(@Nullable String actionId, ActionIndex actionIndex, TraceSpan span,
+                                               CompletableFuture<?> token) {
+        // TODO: rename attr to "actionAfter", add attr "actionBefore"
+        if (actionId == null) return CompletableFuture.completedFuture(null);
+        return actionExecutor.execAction(actionIndex, actionId, span, token);
+    }
+
+    // --------------
+
+    private static String serviceNodeId(String serviceName) {
+        return NODE_SERVICE + serviceName;
+    }
+
+    private static String loadedNodeId(String serviceName) {
+        return NODE_LOADED + serviceName;
+    }
+
+    private static String moduleNodeId(String serviceName, String moduleName) {
+        return NODE_MODULE + serviceName + "/" + moduleName;
+    }
+
+    private interface NodeTask {
+        CompletableFuture<Void> start();
+    }
+
+    private static final class SkippedNodeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SkippedNodeException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of {@link ConfiguratorMetrics}, only loaded when {@link ConfiguratorMetrics#isJfrAvailable()}.
+ */
+@Name("com.pro100kryto.server.configurator.Step")
+@Label("Configurator Step")
+@Description("Phase, service, module or action executed by the configurator")
+@Category({"Server", "Configurator"})
+@StackTrace(false)
+final class ConfiguratorEvent extends Event {
+    @Label("Category")
+    String category;
+
+    @Label("Name")
+    String name;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Failed")
+    boolean failed;
+
+    static void commit(String category, String name, long elapsed, boolean failed) {
+        final ConfiguratorEvent event = new ConfiguratorEvent();
+        if (!event.isEnabled()) return;
+        event.category = category;
+        event.name = name;
+        event.elapsed = elapsed;
+        event.failed = failed;
+        event.commit();
+    }
+}
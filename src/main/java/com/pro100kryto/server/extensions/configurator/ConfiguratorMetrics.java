@@ -0,0 +1,142 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations and counters of the configuration: per phase (parse, createService, setSettings, delay...),
+ * per service, per module and per action id. Every record is also committed as a JFR event
+ * when the JVM has JFR.
+ */
+public final class ConfiguratorMetrics {
+    public static final String PHASE = "phase";
+    public static final String SERVICE = "service";
+    public static final String MODULE = "module";
+    public static final String ACTION = "action";
+
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    long start() {
+        return System.nanoTime();
+    }
+
+    void record(String category, String name, long startNanos) {
+        record(category, name, startNanos, false);
+    }
+
+    void record(String category, String name, long startNanos, boolean failed) {
+        final long nanos = System.nanoTime() - startNanos;
+        histograms.computeIfAbsent(category + ":" + name, key -> new Histogram())
+                .record(nanos, failed);
+        if (JFR_AVAILABLE) {
+            ConfiguratorEvent.commit(category, name, nanos, failed);
+        }
+    }
+
+    /**
+     * Records the duration from startNanos until the future is completed.
+     */
+    <T> CompletableFuture<T> record(String category, String name, long startNanos, CompletableFuture<T> future) {
+        return future.whenComplete((ignored, throwable) -> record(category, name, startNanos, throwable != null));
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    public static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ConfiguratorMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * @return one line per phase, service, module and action, sorted by name
+     */
+    public List<String> report() {
+        final TreeMap<String, Histogram> sorted = new TreeMap<>(histograms);
+        final ArrayList<String> lines = new ArrayList<>(sorted.size());
+        for (final Map.Entry<String, Histogram> entry : sorted.entrySet()) {
+            lines.add(entry.getKey() + " " + entry.getValue());
+        }
+        return lines;
+    }
+
+    // --------------
+
+    /**
+     * Lock free histogram with power of two buckets of nanoseconds.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        void record(long nanos, boolean failed) {
+            if (nanos < 0) nanos = 0;
+            count.increment();
+            if (failed) failures.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(nanos | 1));
+        }
+
+        /**
+         * @return upper bound of the bucket containing the percentile
+         */
+        long percentile(double percentile) {
+            final long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+
+            final long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    final long upperBound = i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(upperBound, maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            final long countValue = count.sum();
+            final long totalValue = totalNanos.sum();
+            return "count=" + countValue
+                    + (failures.sum() == 0 ? "" : " failed=" + failures.sum())
+                    + " total=" + millis(totalValue)
+                    + " mean=" + millis(countValue == 0 ? 0 : totalValue / countValue)
+                    + " p50<=" + millis(percentile(0.5))
+                    + " p99<=" + millis(percentile(0.99))
+                    + " max=" + millis(maxNanos.get());
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3fms", nanos / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Span tree of one execConfiguration, execAction or execActions run: delays, creates, starts, stops,
+ * lib resolutions, services, modules and actions with their parents and threads.
+ * Exported as Chrome trace-event JSON (chrome://tracing, Perfetto) and summarized as the critical path.
+ */
+public final class ConfiguratorTrace {
+    private static final int MAX_SPANS = 200_000;
+    private static final int CRITICAL_PATH_TOP = 10;
+
+    private final ConcurrentLinkedQueue<TraceSpan> spans = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final TraceSpan root;
+
+    ConfiguratorTrace(String name) {
+        root = newSpan(-1, TraceSpan.Kind.RUN, name);
+    }
+
+    TraceSpan getRoot() {
+        return root;
+    }
+
+    TraceSpan newSpan(int parentId, TraceSpan.Kind kind, String name) {
+        final int id = nextId.getAndIncrement();
+        if (id >= MAX_SPANS) {
+            dropped.incrementAndGet();
+            return TraceSpan.NONE;
+        }
+        final TraceSpan span = new TraceSpan(this, id, parentId, kind, name, Thread.currentThread().getName());
+        spans.add(span);
+        return span;
+    }
+
+    public String getName() {
+        return root.getName();
+    }
+
+    public boolean isFinished() {
+        return root.isEnded();
+    }
+
+    public long getDuration(TimeUnit timeUnit) {
+        return timeUnit.convert(root.getEndNanos(System.nanoTime()) - root.getStartNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public int getSpanCount() {
+        return spans.size();
+    }
+
+    // -------------- critical path
+
+    /**
+     * The chain of spans which determined the end of the run: starting from the last ending child
+     * of a span, every previous link is the child which ended last before the next one started.
+     *
+     * @return the duration per cause and the longest spans on the path
+     */
+    public List<String> criticalPath() {
+        final long endNanos = root.getEndNanos(System.nanoTime());
+        final Map<Integer, List<TraceSpan>> children = children();
+        final ArrayList<TraceSpan> path = new ArrayList<>();
+        collectCriticalPath(root, children, endNanos, path);
+
+        final long totalNanos = Math.max(endNanos - root.getStartNanos(), 1);
+        final EnumMap<TraceSpan.Kind, Long> byKind = new EnumMap<>(TraceSpan.Kind.class);
+        long pathNanos = 0;
+        for (final TraceSpan span : path) {
+            final long nanos = duration(span, endNanos);
+            byKind.merge(span.getKind(), nanos, Long::sum);
+            pathNanos += nanos;
+        }
+
+        final ArrayList<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Critical path of %s: %.1f ms, %d of %d spans%s",
+                root.getName(), totalNanos / 1e6, path.size(), spans.size(),
+                dropped.get() == 0 ? "" : ", " + dropped.get() + " spans dropped"));
+
+        final StringBuilder causes = new StringBuilder("  by cause:");
+        for (final Map.Entry<TraceSpan.Kind, Long> entry : byKind.entrySet()) {
+            causes.append(String.format(Locale.ROOT, " %s %.1f ms (%.1f%%),", entry.getKey().getLabel(),
+                    entry.getValue() / 1e6, entry.getValue() * 100.0 / totalNanos));
+        }
+        causes.append(String.format(Locale.ROOT, " other %.1f ms",
+                Math.max(totalNanos - pathNanos, 0) / 1e6));
+        lines.add(causes.toString());
+
+        final ArrayList<TraceSpan> longest = new ArrayList<>(path);
+        longest.sort(Comparator.comparingLong((TraceSpan span) -> duration(span, endNanos)).reversed());
+        final Map<Integer, TraceSpan> byId = byId();
+        for (final TraceSpan span : longest.subList(0, Math.min(CRITICAL_PATH_TOP, longest.size()))) {
+            final long nanos = duration(span, endNanos);
+            lines.add(String.format(Locale.ROOT, "  %10.1f ms %5.1f%%  %-8s %s%s", nanos / 1e6,
+                    nanos * 100.0 / totalNanos, span.getKind().getLabel(), pathOf(span, byId),
+                    span.isFailed() ? " (failed)" : ""));
+        }
+        return lines;
+    }
+
+    private static void collectCriticalPath(TraceSpan span, Map<Integer, List<TraceSpan>> children, long endNanos,
+                                            List<TraceSpan> path) {
+        final List<TraceSpan> spanChildren = children.getOrDefault(span.getId(), Collections.emptyList());
+        final ArrayList<TraceSpan> sorted = new ArrayList<>(spanChildren);
+        sorted.sort(Comparator.comparingLong((TraceSpan child) -> child.getEndNanos(endNanos)).reversed());
+
+        final ArrayList<TraceSpan> chain = new ArrayList<>();
+        long until = span.getEndNanos(endNanos);
+        for (final TraceSpan child : sorted) {
+            if (child.getEndNanos(endNanos) > until) continue;
+            chain.add(child);
+            until = child.getStartNanos();
+        }
+
+        if (chain.isEmpty()) {
+            if (span.getParentId() != -1) path.add(span);
+            return;
+        }
+        Collections.reverse(chain);
+        for (final TraceSpan child : chain) {
+            collectCriticalPath(child, children, endNanos, path);
+        }
+    }
+
+    private static String pathOf(TraceSpan span, Map<Integer, TraceSpan> byId) {
+        final ArrayList<String> names = new ArrayList<>();
+        for (TraceSpan current = span; current != null && current.getParentId() != -1;
+             current = byId.get(current.getParentId())) {
+            names.add(current.getName());
+        }
+        Collections.reverse(names);
+        return String.join(" > ", names);
+    }
+
+    private Map<Integer, List<TraceSpan>> children() {
+        final HashMap<Integer, List<TraceSpan>> children = new HashMap<>();
+        for (final TraceSpan span : spans) {
+            children.computeIfAbsent(span.getParentId(), key -> new ArrayList<>()).add(span);
+        }
+        return children;
+    }
+
+    private Map<Integer, TraceSpan> byId() {
+        final HashMap<Integer, TraceSpan> byId = new HashMap<>();
+        for (final TraceSpan span : spans) {
+            byId.put(span.getId(), span);
+        }
+        return byId;
+    }
+
+    private static long duration(TraceSpan span, long endNanos) {
+        return span.getEndNanos(endNanos) - span.getStartNanos();
+    }
+
+    // -------------- Chrome trace events
+
+    /**
+     * Blocking calls are complete events on their thread, delays, services, modules and actions
+     * are async events. Timestamps are microseconds since the start of the run.
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        final long originNanos = root.getStartNanos();
+        final long endNanos = root.getEndNanos(System.nanoTime());
+        final LinkedHashMap<String, Integer> threadIds = new LinkedHashMap<>();
+        for (final TraceSpan span : spans) {
+            threadIds.putIfAbsent(span.getThreadName(), threadIds.size() + 1);
+        }
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        writer.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":");
+        writeString(writer, "Configurator " + root.getName());
+        writer.write("}}");
+        for (final Map.Entry<String, Integer> thread : threadIds.entrySet()) {
+            writer.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getValue()
+                    + ",\"args\":{\"name\":");
+            writeString(writer, thread.getKey());
+            writer.write("}}");
+        }
+
+        for (final TraceSpan span : spans) {
+            final int threadId = threadIds.get(span.getThreadName());
+            final String start = micros(span.getStartNanos() - originNanos);
+            if (span.isSync()) {
+                writeEventStart(writer, span, "X", threadId, start);
+                writer.write(",\"dur\":" + micros(duration(span, endNanos)));
+                writeArgs(writer, span);
+            } else {
+                writeEventStart(writer, span, "b", threadId, start);
+                writer.write(",\"id\":" + span.getId());
+                writeArgs(writer, span);
+                writeEventStart(writer, span, "e", threadId, micros(span.getEndNanos(endNanos) - originNanos));
+                writer.write(",\"id\":" + span.getId() + "}");
+            }
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    private static void writeEventStart(Writer writer, TraceSpan span, String phase, int threadId, String timestamp)
+            throws IOException {
+        writer.write(",\n{\"name\":");
+        writeString(writer, span.getName());
+        writer.write(",\"cat\":\"" + span.getKind().getLabel() + "\",\"ph\":\"" + phase
+                + "\",\"pid\":1,\"tid\":" + threadId + ",\"ts\":" + timestamp);
+    }
+
+    private static void writeArgs(Writer writer, TraceSpan span) throws IOException {
+        writer.write(",\"args\":{\"span\":" + span.getId() + ",\"parent\":" + span.getParentId()
+                + ",\"cause\":\"" + span.getKind().getLabel() + "\"");
+        if (span.isFailed()) writer.write(",\"failed\":true");
+        if (!span.isEnded()) writer.write(",\"unfinished\":true");
+        writer.write("}}");
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e3);
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
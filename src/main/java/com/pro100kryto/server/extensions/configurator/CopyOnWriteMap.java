@@ -0,0 +1,139 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map handed to a module: reads go to the shared settings, the first write makes a private copy.
+ * Writes through entrySet, keySet and values copy the same way.
+ */
+final class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+    private Map<K, V> map;
+    private boolean copied = false;
+    private Set<Entry<K, V>> entrySet = null;
+
+    CopyOnWriteMap(Map<K, V> shared) {
+        map = shared;
+    }
+
+    @Override
+    public V get(Object key) {
+        return map.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) entrySet = new EntrySet();
+        return entrySet;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return copy().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return copy().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        copy().putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        copy().clear();
+    }
+
+    private Map<K, V> copy() {
+        if (!copied) {
+            map = new HashMap<>(map);
+            copied = true;
+        }
+        return map;
+    }
+
+    // --------------
+
+    private final class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return copied ? map.entrySet().iterator() : new SharedIterator(map.entrySet().iterator());
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.entrySet().contains(o);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public void clear() {
+            CopyOnWriteMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates the shared settings, removing or setting a value writes to the copy.
+     */
+    private final class SharedIterator implements Iterator<Entry<K, V>> {
+        private final Iterator<Entry<K, V>> iterator;
+        private Entry<K, V> last = null;
+
+        private SharedIterator(Iterator<Entry<K, V>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            last = new SharedEntry(iterator.next());
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            copy().remove(last.getKey());
+            last = null;
+        }
+    }
+
+    private final class SharedEntry extends SimpleEntry<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private SharedEntry(Entry<K, V> entry) {
+            super(entry);
+        }
+
+        @Override
+        public V setValue(V value) {
+            copy().put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directed graph of configuration nodes where an edge points from a node to the node it depends on.
+ * Insertion order of nodes is kept, so the topological order is stable.
+ */
+final class DependencyGraph {
+    private final LinkedHashMap<String, LinkedHashSet<String>> dependencies = new LinkedHashMap<>();
+
+    void addNode(String id) {
+        if (!dependencies.containsKey(id)) {
+            dependencies.put(id, new LinkedHashSet<String>());
+        }
+    }
+
+    void addDependency(String id, String dependsOnId) {
+        addNode(id);
+        addNode(dependsOnId);
+        dependencies.get(id).add(dependsOnId);
+    }
+
+    boolean contains(String id) {
+        return dependencies.containsKey(id);
+    }
+
+    Set<String> getNodes() {
+        return Collections.unmodifiableSet(dependencies.keySet());
+    }
+
+    Set<String> getDependencies(String id) {
+        final Set<String> nodeDependencies = dependencies.get(id);
+        return nodeDependencies == null ?
+                Collections.<String>emptySet() :
+                Collections.unmodifiableSet(nodeDependencies);
+    }
+
+    /**
+     * @return nodes of the first found cycle (the first node is repeated at the end) or null
+     */
+    @Nullable
+    List<String> findCycle() {
+        final Set<String> visited = new HashSet<>();
+        final LinkedHashSet<String> path = new LinkedHashSet<>();
+
+        for (final String id : dependencies.keySet()) {
+            final List<String> cycle = findCycle(id, visited, path);
+            if (cycle != null) return cycle;
+        }
+        return null;
+    }
+
+    @Nullable
+    private List<String> findCycle(String id, Set<String> visited, LinkedHashSet<String> path) {
+        if (path.contains(id)) {
+            final ArrayList<String> cycle = new ArrayList<>();
+            boolean inCycle = false;
+            for (final String pathId : path) {
+                if (pathId.equals(id)) inCycle = true;
+                if (inCycle) cycle.add(pathId);
+            }
+            cycle.add(id);
+            return cycle;
+        }
+        if (!visited.add(id)) return null;
+
+        path.add(id);
+        for (final String dependsOnId : dependencies.get(id)) {
+            final List<String> cycle = findCycle(dependsOnId, visited, path);
+            if (cycle != null) return cycle;
+        }
+        path.remove(id);
+        return null;
+    }
+
+    /**
+     * Kahn's algorithm. Must be called on an acyclic graph.
+     *
+     * @return nodes ordered so that every node goes after all of its dependencies
+     */
+    List<String> topologicalOrder() {
+        final Map<String, Integer> remaining = new HashMap<>(dependencies.size() * 2);
+        final Map<String, List<String>> dependents = new HashMap<>(dependencies.size() * 2);
+        final ArrayDeque<String> ready = new ArrayDeque<>();
+
+        for (final Map.Entry<String, LinkedHashSet<String>> entry : dependencies.entrySet()) {
+            remaining.put(entry.getKey(), entry.getValue().size());
+            if (entry.getValue().isEmpty()) ready.add(entry.getKey());
+            for (final String dependsOnId : entry.getValue()) {
+                List<String> list = dependents.get(dependsOnId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    dependents.put(dependsOnId, list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+
+        final ArrayList<String> order = new ArrayList<>(dependencies.size());
+        while (!ready.isEmpty()) {
+            final String id = ready.poll();
+            order.add(id);
+            final List<String> list = dependents.get(id);
+            if (list == null) continue;
+            for (final String dependentId : list) {
+                final int left = remaining.get(dependentId) - 1;
+                remaining.put(dependentId, left);
+                if (left == 0) ready.add(dependentId);
+            }
+        }
+
+        if (order.size() != dependencies.size())
+            throw new IllegalStateException("Dependency graph has a cycle");
+        return order;
+    }
+}
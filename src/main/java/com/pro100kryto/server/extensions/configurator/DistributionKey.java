@@ -0,0 +1,127 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Shared secret of a {@link ConfigSource} and its {@link ConfigSubscription}s. Both sides prove they know it
+ * in the handshake and every frame is signed with it, so a local process without the key file can neither
+ * subscribe nor send a configuration to a subscriber.
+ */
+final class DistributionKey {
+    static final int NONCE_LENGTH = 32;
+    static final int MAC_LENGTH = 32;
+    private static final int MIN_LENGTH = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final SecretKeySpec key;
+
+    DistributionKey(byte[] secret) {
+        if (secret.length < MIN_LENGTH)
+            throw new IllegalArgumentException("Distribution key is shorter than " + MIN_LENGTH + " bytes");
+        key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    /**
+     * Trailing line breaks of the file are ignored. Where the file system has POSIX permissions,
+     * the file must not be accessible by anyone but its owner.
+     */
+    static DistributionKey read(File file) throws IOException {
+        final Path path = file.toPath();
+        final PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+        if (view != null) {
+            for (final PosixFilePermission permission : view.readAttributes().permissions()) {
+                if (!permission.name().startsWith("OWNER_"))
+                    throw new IOException("Distribution key \"" + file + "\" must be accessible by its owner only");
+            }
+        }
+
+        final byte[] bytes = Files.readAllBytes(path);
+        int length = bytes.length;
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) {
+            length--;
+        }
+        try {
+            return new DistributionKey(Arrays.copyOf(bytes, length));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            throw new IOException(illegalArgumentException.getMessage() + ": \"" + file + "\"");
+        }
+    }
+
+    static byte[] nonce() {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return nonce;
+    }
+
+    /**
+     * @param role "source" or "subscriber", so the proof of one side is never valid for the other
+     */
+    byte[] proof(String role, byte[] sourceNonce, byte[] subscriberNonce) {
+        final Mac mac = mac();
+        mac.update(role.getBytes(StandardCharsets.UTF_8));
+        mac.update(sourceNonce);
+        mac.update(subscriberNonce);
+        return mac.doFinal();
+    }
+
+    Session session(byte[] sourceNonce, byte[] subscriberNonce) {
+        return new Session(sourceNonce, subscriberNonce);
+    }
+
+    static void verify(byte[] expected, byte[] actual, String what) throws IOException {
+        if (!MessageDigest.isEqual(expected, actual)) throw new IOException("Wrong " + what + ", keys differ");
+    }
+
+    private Mac mac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException securityException) {
+            throw new IllegalStateException(securityException);
+        }
+    }
+
+    /**
+     * Signs the frames of one connection, the source and the subscriber sign the same frames in the same order.
+     */
+    final class Session {
+        private final byte[] sourceNonce;
+        private final byte[] subscriberNonce;
+        private long sequence = 0;
+
+        private Session(byte[] sourceNonce, byte[] subscriberNonce) {
+            this.sourceNonce = sourceNonce;
+            this.subscriberNonce = subscriberNonce;
+        }
+
+        /**
+         * Every frame is signed with its number, so a frame can be neither replayed nor reordered.
+         */
+        byte[] sign(byte[] frame, int length) {
+            final long sequence = this.sequence++;
+            final Mac mac = mac();
+            mac.update("frame".getBytes(StandardCharsets.UTF_8));
+            mac.update(sourceNonce);
+            mac.update(subscriberNonce);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mac.update((byte) (sequence >>> shift));
+            }
+            mac.update(frame, 0, length);
+            return mac.doFinal();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads config.xml together with its &lt;include path="..."/&gt; fragments.
+ * Included files are read and parsed concurrently on the fork-join pool, every parsed fragment
+ * is cached by canonical path and content hash, so a reload only parses the changed files.
+ * A file included by several files is merged once, where it is first included.
+ * Include cycles fail the load, duplicate services and settings profiles fail the merge.
+ */
+final class FragmentLoader {
+    private final StaxConfigLoader configLoader;
+    private final ConfiguratorMetrics metrics;
+    private final ForkJoinPool pool;
+    private final ConcurrentHashMap<String, CachedFragment> cache = new ConcurrentHashMap<>();
+
+    FragmentLoader(StaxConfigLoader configLoader, ConfiguratorMetrics metrics, ForkJoinPool pool) {
+        this.configLoader = configLoader;
+        this.metrics = metrics;
+        this.pool = pool;
+    }
+
+    /**
+     * @param bytes content of the main file, already read to check the snapshot
+     */
+    Result load(File file, byte[] bytes, byte[] hash) throws IOException, XMLStreamException {
+        final AtomicInteger parsed = new AtomicInteger();
+        final Node root = pool.invoke(new FragmentTask(LibraryResolver.canonicalPath(file), bytes, hash,
+                Collections.<String>emptyList(), parsed));
+
+        final LinkedHashMap<String, ConfigFragment> fragments = new LinkedHashMap<>();
+        final LinkedHashMap<String, byte[]> includedHashes = new LinkedHashMap<>();
+        collect(root, fragments, includedHashes);
+        // files which are not included anymore would be kept forever
+        cache.keySet().retainAll(fragments.keySet());
+
+        return new Result(ConfigFragment.merge(fragments), includedHashes, parsed.get());
+    }
+
+    /**
+     * Depth-first, so fragments are merged in the order the includes are written.
+     */
+    private void collect(Node node, Map<String, ConfigFragment> fragments, Map<String, byte[]> includedHashes)
+            throws IOException, XMLStreamException {
+        if (node.error instanceof IOException) throw (IOException) node.error;
+        if (node.error instanceof XMLStreamException) throw (XMLStreamException) node.error;
+        if (node.error instanceof RuntimeException) throw (RuntimeException) node.error;
+        if (node.error instanceof Error) throw (Error) node.error;
+        if (node.error != null) throw new IllegalStateException(node.error);
+
+        if (fragments.containsKey(node.path)) return;
+        if (!fragments.isEmpty()) includedHashes.put(node.path, node.hash);
+        fragments.put(node.path, node.fragment);
+        for (final Node child : node.children) {
+            collect(child, fragments, includedHashes);
+        }
+    }
+
+    private ConfigFragment parse(String path, byte[] bytes, byte[] hash, AtomicInteger parsed)
+            throws XMLStreamException {
+        final CachedFragment cached = cache.get(path);
+        if (cached != null && Arrays.equals(cached.hash, hash)) return cached.fragment;
+
+        final long startNanos = metrics.start();
+        final ConfigFragment fragment;
+        try {
+            fragment = configLoader.load(new ByteArrayInputStream(bytes));
+        } catch (XMLStreamException xmlStreamException) {
+            throw new XMLStreamException("Failed to parse '" + path + "': " + xmlStreamException.getMessage(),
+                    xmlStreamException);
+        }
+        metrics.record(ConfiguratorMetrics.PHASE, "parseFragment", startNanos);
+        parsed.incrementAndGet();
+        cache.put(path, new CachedFragment(hash, fragment));
+        return fragment;
+    }
+
+    // --------------
+
+    static final class Result {
+        private final ConfigModel model;
+        private final Map<String, byte[]> includedHashes;
+        private final int parsed;
+
+        private Result(ConfigModel model, Map<String, byte[]> includedHashes, int parsed) {
+            this.model = model;
+            this.includedHashes = Collections.unmodifiableMap(includedHashes);
+            this.parsed = parsed;
+        }
+
+        ConfigModel getModel() {
+            return model;
+        }
+
+        /**
+         * @return content hashes of included files by canonical path, without the main file
+         */
+        Map<String, byte[]> getIncludedHashes() {
+            return includedHashes;
+        }
+
+        /**
+         * @return count of files parsed by this load, the others came from the cache
+         */
+        int getParsed() {
+            return parsed;
+        }
+    }
+
+    private static final class CachedFragment {
+        private final byte[] hash;
+        private final ConfigFragment fragment;
+
+        private CachedFragment(byte[] hash, ConfigFragment fragment) {
+            this.hash = hash;
+            this.fragment = fragment;
+        }
+    }
+
+    /**
+     * Errors are kept in the node instead of being thrown, so they cross fork-join threads unchanged.
+     */
+    private static final class Node {
+        private final String path;
+        private byte[] hash;
+        private ConfigFragment fragment;
+        private List<Node> children = Collections.emptyList();
+        @Nullable
+        private Throwable error;
+
+        private Node(String path) {
+            this.path = path;
+        }
+    }
+
+    private final class FragmentTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+        @Nullable
+        private byte[] bytes;
+        @Nullable
+        private final byte[] hash;
+        private final List<String> includedBy;
+        private final AtomicInteger parsed;
+
+        private FragmentTask(String path, @Nullable byte[] bytes, @Nullable byte[] hash,
+                             List<String> includedBy, AtomicInteger parsed) {
+            this.path = path;
+            this.bytes = bytes;
+            this.hash = hash;
+            this.includedBy = includedBy;
+            this.parsed = parsed;
+        }
+
+        @Override
+        protected Node compute() {
+            final Node node = new Node(path);
+            try {
+                if (bytes == null) bytes = Files.readAllBytes(new File(path).toPath());
+                node.hash = hash == null ? ConfigSnapshot.hash(bytes) : hash;
+                node.fragment = parse(path, bytes, node.hash, parsed);
+                bytes = null;
+
+                if (node.fragment.getIncludes().isEmpty()) return node;
+
+                final ArrayList<String> chain = new ArrayList<>(includedBy);
+                chain.add(path);
+                final File directory = new File(path).getParentFile();
+                final ArrayList<FragmentTask> tasks = new ArrayList<>(node.fragment.getIncludes().size());
+                for (final String include : node.fragment.getIncludes()) {
+                    final File includeFile = new File(include).isAbsolute() ?
+                            new File(include) :
+                            new File(directory, include);
+                    final String includePath = LibraryResolver.canonicalPath(includeFile);
+                    if (chain.contains(includePath)) {
+                        final ArrayList<String> cycle = new ArrayList<>(chain.subList(chain.indexOf(includePath),
+                                chain.size()));
+                        cycle.add(includePath);
+                        throw new IllegalStateException("Include cycle: " + String.join(" -> ", cycle));
+                    }
+                    tasks.add(new FragmentTask(includePath, null, null, chain, parsed));
+                }
+
+                final ArrayList<Node> children = new ArrayList<>(tasks.size());
+                for (final FragmentTask task : invokeAll(tasks)) {
+                    children.add(task.join());
+                }
+                node.children = children;
+            } catch (Throwable throwable) {
+                node.error = throwable;
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.module.IModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Definitions of modules with lazy="true", created on the first touch.
+ * Concurrent first touches share one creation, a failed creation is retried by the next touch.
+ */
+final class LazyModules {
+    private final AsyncEngine engine;
+    private final ConcurrentHashMap<String, AsyncEngine.ThrowingSupplier<IModule>> definitions =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<IModule>> creations = new ConcurrentHashMap<>();
+
+    LazyModules(AsyncEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Records or replaces the definition of a module which is not created yet.
+     */
+    void register(String serviceName, String moduleName, AsyncEngine.ThrowingSupplier<IModule> factory) {
+        definitions.put(TargetRegistry.moduleKey(serviceName, moduleName), factory);
+    }
+
+    boolean isLazy(String serviceName, String moduleName) {
+        return definitions.containsKey(TargetRegistry.moduleKey(serviceName, moduleName));
+    }
+
+    /**
+     * @return true if the module is lazy and no creation was started yet
+     */
+    boolean isPending(String serviceName, String moduleName) {
+        final String key = TargetRegistry.moduleKey(serviceName, moduleName);
+        return definitions.containsKey(key) && !creations.containsKey(key);
+    }
+
+    /**
+     * @return "serviceName/moduleName" of lazy modules which are not created yet
+     */
+    List<String> getPending() {
+        final ArrayList<String> pending = new ArrayList<>();
+        for (final String key : definitions.keySet()) {
+            if (!creations.containsKey(key)) pending.add(key);
+        }
+        return pending;
+    }
+
+    /**
+     * Creates the module if it is lazy and not created yet, completes at once for other modules.
+     * The creation is not bound to any caller, a caller which gives up does not fail it for the others.
+     *
+     * @param token execution of the caller, the returned future fails as soon as it is completed or cancelled
+     */
+    CompletableFuture<Void> ensureCreated(String serviceName, String moduleName, CompletableFuture<?> token) {
+        final String key = TargetRegistry.moduleKey(serviceName, moduleName);
+        final AsyncEngine.ThrowingSupplier<IModule> factory = definitions.get(key);
+        if (factory == null) return CompletableFuture.completedFuture(null);
+
+        final CompletableFuture<IModule> creation = new CompletableFuture<>();
+        final CompletableFuture<IModule> existing = creations.putIfAbsent(key, creation);
+        if (existing != null) return join(existing, token);
+
+        engine.supply(factory, engine.getWorkers(), creation).whenComplete((module, throwable) -> {
+            if (throwable != null) {
+                creations.remove(key, creation);
+                creation.completeExceptionally(AsyncEngine.unwrap(throwable));
+            } else {
+                creation.complete(module);
+            }
+        });
+        return join(creation, token);
+    }
+
+    private static CompletableFuture<Void> join(CompletableFuture<IModule> creation, CompletableFuture<?> token) {
+        final CompletableFuture<Void> joined = new CompletableFuture<>();
+        creation.whenComplete((module, throwable) -> {
+            if (throwable != null) {
+                joined.completeExceptionally(throwable);
+            } else if (token.isDone()) {
+                joined.completeExceptionally(new CancellationException());
+            } else {
+                joined.complete(null);
+            }
+        });
+        token.whenComplete((ignored, throwable) -> joined.completeExceptionally(new CancellationException()));
+        return joined;
+    }
+}
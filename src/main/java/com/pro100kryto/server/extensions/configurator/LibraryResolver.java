@@ -0,0 +1,210 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.IServerControl;
+import com.pro100kryto.server.UtilsInternal;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.logger.ILogger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves baseLibs into class path URLs.
+ * Manifest chains of recursive baseLibs are cached per canonical jar path and are valid
+ * while none of the jars of the chain is modified, so a jar shared by many services is read once.
+ */
+final class LibraryResolver {
+    private final IServerControl serverControl;
+    private final ILogger logger;
+    private final ConfiguratorMetrics metrics;
+    private final ConcurrentHashMap<String, Resolution> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong resolveNanos = new AtomicLong();
+
+    LibraryResolver(IServerControl serverControl, ILogger logger, ConfiguratorMetrics metrics) {
+        this.serverControl = serverControl;
+        this.logger = logger;
+        this.metrics = metrics;
+    }
+
+    List<URL> resolve(BaseLibConfig baseLib) throws Throwable {
+        final File fileLib = createFileLib(baseLib.getPath());
+        if (!baseLib.isRecursive()) {
+            return Collections.singletonList(fileLib.toURI().toURL());
+        }
+
+        final String key = canonicalPath(fileLib);
+        final Resolution cached = cache.get(key);
+        if (cached != null && cached.isValid()) {
+            hits.incrementAndGet();
+            return cached.getUrls();
+        }
+        misses.incrementAndGet();
+
+        final long startNanos = metrics.start();
+        final ArrayList<URL> urlList = new ArrayList<>();
+        UtilsInternal.readJarClassPathAndCheck(logger, fileLib, urlList);
+        final Resolution resolution = Resolution.create(fileLib, urlList);
+        resolveNanos.addAndGet(System.nanoTime() - startNanos);
+        metrics.record(ConfiguratorMetrics.PHASE, "resolveLib", startNanos);
+
+        cache.put(key, resolution);
+        return resolution.getUrls();
+    }
+
+    /**
+     * Resolves all distinct jars concurrently so later {@link #resolve(BaseLibConfig)} calls are cache hits.
+     * Failures are not reported here, they surface again when the baseLib is resolved for its target.
+     */
+    CompletableFuture<Void> prefetch(Collection<BaseLibConfig> baseLibs, Executor executor) {
+        final LinkedHashMap<String, BaseLibConfig> distinct = new LinkedHashMap<>();
+        try {
+            for (final BaseLibConfig baseLib : baseLibs) {
+                if (!baseLib.isRecursive()) continue;
+                final String key = canonicalPath(toFile(baseLib.getPath()));
+                final Resolution cached = cache.get(key);
+                if (cached == null || !cached.isValid()) distinct.put(key, baseLib);
+            }
+        } catch (RuntimeException ignored) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (distinct.size() < 2) return CompletableFuture.completedFuture(null);
+
+        final ArrayList<CompletableFuture<?>> futures = new ArrayList<>(distinct.size());
+        for (final BaseLibConfig baseLib : distinct.values()) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    resolve(baseLib);
+                } catch (Throwable ignored) {
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * @return URLs of all baseLibs in order, without duplicates
+     */
+    Collection<URL> resolveDistinct(List<BaseLibConfig> baseLibs) throws Throwable {
+        if (baseLibs.isEmpty()) return Collections.emptyList();
+        final LinkedHashSet<URL> urls = new LinkedHashSet<>();
+        for (final BaseLibConfig baseLib : baseLibs) {
+            urls.addAll(resolve(baseLib));
+        }
+        return urls;
+    }
+
+    /**
+     * Adds results resolved earlier, e.g. loaded from a snapshot.
+     */
+    void putResolved(String canonicalPath, Resolution resolution) {
+        cache.put(canonicalPath, resolution);
+    }
+
+    Map<String, Resolution> getResolved() {
+        return new HashMap<>(cache);
+    }
+
+    String getStats() {
+        final long hitsCount = hits.get();
+        final long total = hitsCount + misses.get();
+        return "libraries: " + cache.size() + " cached"
+                + ", resolved: " + misses.get()
+                + ", cache hits: " + hitsCount
+                + " (" + (total == 0 ? 0 : hitsCount * 100 / total) + "%)"
+                + ", resolution time: " + TimeUnit.NANOSECONDS.toMillis(resolveNanos.get()) + " ms";
+    }
+
+    // --------------
+
+    File createFileLib(final String path){
+        final File fileLib = toFile(path);
+        if (!fileLib.exists()) logger.writeWarn("\""+path + "\" not found");
+        return fileLib;
+    }
+
+    File toFile(final String path){
+        return new File(
+                path.startsWith("file:") ?
+                        path :
+                        serverControl.getWorkingPath() + File.separator
+                                + "core" + File.separator
+                                + path.replace("/", File.separator).replace("\\", File.separator));
+    }
+
+    static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ignored) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    @Nullable
+    private static File toFile(URL url) {
+        if (!url.getProtocol().equals("file")) return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * URLs of a manifest chain and modification times of all jars they were read from.
+     */
+    static final class Resolution {
+        private final List<URL> urls;
+        private final Map<String, Long> jarsModified;
+
+        Resolution(List<URL> urls, Map<String, Long> jarsModified) {
+            this.urls = Collections.unmodifiableList(new ArrayList<>(urls));
+            this.jarsModified = Collections.unmodifiableMap(jarsModified);
+        }
+
+        static Resolution create(File fileLib, List<URL> urls) {
+            final LinkedHashMap<String, Long> jarsModified = new LinkedHashMap<>();
+            jarsModified.put(fileLib.getPath(), fileLib.lastModified());
+            for (final URL url : urls) {
+                final File file = toFile(url);
+                if (file != null) jarsModified.put(file.getPath(), file.lastModified());
+            }
+            return new Resolution(urls, jarsModified);
+        }
+
+        List<URL> getUrls() {
+            return urls;
+        }
+
+        Map<String, Long> getJarsModified() {
+            return jarsModified;
+        }
+
+        /**
+         * @return true if none of the jars of the chain was modified since it was resolved
+         */
+        boolean isValid() {
+            for (final Map.Entry<String, Long> jar : jarsModified.entrySet()) {
+                if (new File(jar.getKey()).lastModified() != jar.getValue()) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionsConfig;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServicesConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ConfigModel} split into independently encoded parts: server baseLibs, settings, settings profiles,
+ * actions, the services element and every service with its modules. A change of one service is
+ * a delta of that part only.
+ */
+final class ModelParts {
+    static final ModelParts EMPTY = new ModelParts(new LinkedHashMap<>());
+
+    private static final String BASE_LIBS = "baseLibs";
+    private static final String SETTINGS = "settings";
+    private static final String SETTINGS_PROFILES = "settingsProfiles";
+    private static final String ACTIONS = "actions";
+    private static final String SERVICES = "services";
+    private static final String SERVICE_PREFIX = "service:";
+
+    private final Map<String, byte[]> parts;
+
+    private ModelParts(LinkedHashMap<String, byte[]> parts) {
+        this.parts = Collections.unmodifiableMap(parts);
+    }
+
+    int size() {
+        return parts.size();
+    }
+
+    /**
+     * @return encoded length of all parts
+     */
+    long byteCount() {
+        long count = 0;
+        for (final byte[] part : parts.values()) {
+            count += part.length;
+        }
+        return count;
+    }
+
+    /**
+     * @return true if both have the same parts in the same order
+     */
+    boolean sameAs(ModelParts other) {
+        if (!new ArrayList<>(parts.keySet()).equals(new ArrayList<>(other.parts.keySet()))) return false;
+        for (final Map.Entry<String, byte[]> part : parts.entrySet()) {
+            if (!Arrays.equals(part.getValue(), other.parts.get(part.getKey()))) return false;
+        }
+        return true;
+    }
+
+    static ModelParts split(ConfigModel model) throws IOException {
+        final LinkedHashMap<String, byte[]> parts = new LinkedHashMap<>();
+        parts.put(BASE_LIBS, encode(writer -> writer.writeBaseLibs(model.getBaseLibs())));
+        parts.put(SETTINGS, encode(writer -> writer.writeSettings(model.getSettings())));
+        parts.put(SETTINGS_PROFILES, encode(writer -> {
+            writer.writeVarLong(model.getSettingsProfiles().size());
+            for (final Map.Entry<String, Map<String, String>> profile : model.getSettingsProfiles().entrySet()) {
+                writer.writeString(profile.getKey());
+                writer.writeSettings(profile.getValue());
+            }
+        }));
+        parts.put(ACTIONS, encode(writer -> writer.writeActions(model.getActions())));
+
+        // the services element without services, they are parts of their own
+        final ServicesConfig services = model.getServices();
+        parts.put(SERVICES, encode(writer -> writer.writeServices(new ServicesConfig(services.getDelay(),
+                services.getOnLoad(), services.getBaseLibs(), Collections.emptyList(), services.isParallel(),
+                services.getThreads()))));
+        for (final ServiceConfig service : services.getServices()) {
+            parts.put(SERVICE_PREFIX + service.getName(), encode(writer -> writer.writeService(service)));
+        }
+        return new ModelParts(parts);
+    }
+
+    ConfigModel join() throws IOException {
+        final List<BaseLibConfig> baseLibs = decode(BASE_LIBS).readBaseLibs();
+        final Map<String, String> settings = decode(SETTINGS).readSettings();
+        final ActionsConfig actions = decode(ACTIONS).readActions();
+
+        final ConfigModelCodec.Reader profilesReader = decode(SETTINGS_PROFILES);
+        final int profilesCount = profilesReader.readCount();
+        final LinkedHashMap<String, Map<String, String>> settingsProfiles = new LinkedHashMap<>();
+        for (int i = 0; i < profilesCount; i++) {
+            settingsProfiles.put(profilesReader.readString(), profilesReader.readSettings());
+        }
+
+        final ArrayList<ServiceConfig> serviceList = new ArrayList<>();
+        for (final Map.Entry<String, byte[]> part : parts.entrySet()) {
+            if (part.getKey().startsWith(SERVICE_PREFIX)) serviceList.add(reader(part.getValue()).readService());
+        }
+        final ServicesConfig services = decode(SERVICES).readServices();
+
+        return new ConfigModel(baseLibs, settings, new ServicesConfig(services.getDelay(), services.getOnLoad(),
+                services.getBaseLibs(), serviceList, services.isParallel(), services.getThreads()),
+                actions, settingsProfiles);
+    }
+
+    // -------------- delta
+
+    /**
+     * Writes the parts which differ from the base, removed parts and the order of parts if it changed.
+     *
+     * @param base parts known to the reader, null to write everything
+     * @return count of written parts
+     */
+    int writeDelta(DataOutput out, @Nullable ModelParts base) throws IOException {
+        final Map<String, byte[]> baseParts = base == null ? Collections.emptyMap() : base.parts;
+        final ConfigModelCodec.Writer writer = new ConfigModelCodec.Writer(out);
+
+        final ArrayList<Map.Entry<String, byte[]>> changed = new ArrayList<>();
+        for (final Map.Entry<String, byte[]> part : parts.entrySet()) {
+            if (!Arrays.equals(part.getValue(), baseParts.get(part.getKey()))) changed.add(part);
+        }
+        writer.writeVarLong(changed.size());
+        for (final Map.Entry<String, byte[]> part : changed) {
+            writer.writeString(part.getKey());
+            writer.writeVarLong(part.getValue().length);
+            out.write(part.getValue());
+        }
+
+        final ArrayList<String> removed = new ArrayList<>();
+        for (final String key : baseParts.keySet()) {
+            if (!parts.containsKey(key)) removed.add(key);
+        }
+        writer.writeStrings(removed);
+
+        final boolean reordered = !new ArrayList<>(parts.keySet()).equals(new ArrayList<>(baseParts.keySet()));
+        out.writeBoolean(reordered);
+        if (reordered) writer.writeStrings(new ArrayList<>(parts.keySet()));
+        return changed.size();
+    }
+
+    /**
+     * @param limit count of bytes left in the input
+     * @return these parts with the delta applied
+     * @throws IOException if the delta is broken
+     */
+    ModelParts readDelta(DataInput in, long limit) throws IOException {
+        final ConfigModelCodec.Reader reader = new ConfigModelCodec.Reader(in, limit);
+
+        final int changedCount = reader.readCount();
+        final LinkedHashMap<String, byte[]> changed = new LinkedHashMap<>();
+        for (int i = 0; i < changedCount; i++) {
+            changed.put(reader.readString(), reader.readBytes());
+        }
+        final HashSet<String> removed = new HashSet<>(reader.readStrings());
+        final List<String> order = reader.readBoolean() ? reader.readStrings() : new ArrayList<>(parts.keySet());
+
+        final LinkedHashMap<String, byte[]> result = new LinkedHashMap<>();
+        for (final String key : order) {
+            if (removed.contains(key)) continue;
+            final byte[] bytes = changed.containsKey(key) ? changed.get(key) : parts.get(key);
+            if (bytes == null) throw new IOException("Delta misses part \"" + key + "\"");
+            result.put(key, bytes);
+        }
+        return new ModelParts(result);
+    }
+
+    // --------------
+
+    private interface PartWriter {
+        void write(ConfigModelCodec.Writer writer) throws IOException;
+    }
+
+    /**
+     * Every part has its own string table, so it is decoded without the others.
+     */
+    private static byte[] encode(PartWriter partWriter) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        partWriter.write(new ConfigModelCodec.Writer(out));
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private ConfigModelCodec.Reader decode(String key) throws IOException {
+        final byte[] bytes = parts.get(key);
+        if (bytes == null) throw new IOException("Part \"" + key + "\" is missing");
+        return reader(bytes);
+    }
+
+    private static ConfigModelCodec.Reader reader(byte[] bytes) {
+        return new ConfigModelCodec.Reader(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+}
@@ -0,0 +1,311 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.StartStopStatus;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.logger.ILogger;
+import com.pro100kryto.server.module.IModule;
+import com.pro100kryto.server.service.IServiceControl;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Stops services and modules created by the configurator.
+ * Modules stop before their service and a dependency stops after everything depending on it.
+ * With parallel bootstrap independent branches stop concurrently following "dependsOn",
+ * otherwise targets stop one by one in reverse creation order.
+ * A stop which fails or exceeds its timeout is escalated to stop(true).
+ */
+final class ShutdownExecutor {
+    private static final String NODE_SERVICE = "service:";
+    private static final String NODE_MODULE = "module:";
+
+    private final ILogger logger;
+    private final AsyncEngine engine;
+    private final TargetRegistry registry;
+    private final TargetLocks locks;
+    private final ConfiguratorMetrics metrics;
+
+    ShutdownExecutor(ILogger logger, AsyncEngine engine, TargetRegistry registry, TargetLocks locks,
+                     ConfiguratorMetrics metrics) {
+        this.logger = logger;
+        this.engine = engine;
+        this.registry = registry;
+        this.locks = locks;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param model applied configuration providing "dependsOn" or null for the reverse creation order
+     * @param force stop(true) right away instead of escalating
+     * @param nodeTimeoutMillis time for one stop call and again for its escalation
+     * @param timeoutMillis time for the whole shutdown, later stops are forced without waiting
+     */
+    CompletableFuture<Void> shutdown(@Nullable ConfigModel model, boolean force,
+                                     long nodeTimeoutMillis, long timeoutMillis) {
+        final long startNanos = metrics.start();
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final Map<String, StopTarget> targets = collectTargets();
+        if (targets.isEmpty()) return CompletableFuture.completedFuture(null);
+
+        final boolean parallel = model != null && model.getServices().isParallel();
+        DependencyGraph graph = buildGraph(model, targets, parallel);
+        if (parallel) {
+            final List<String> cycle = graph.findCycle();
+            if (cycle != null) {
+                logger.writeWarn("Cycle in \"dependsOn\": " + cycle + ", stopping in reverse creation order");
+                graph = buildGraph(model, targets, false);
+            }
+        }
+
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final LinkedHashMap<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (final String nodeId : graph.topologicalOrder()) {
+            final Set<String> dependencies = graph.getDependencies(nodeId);
+            final CompletableFuture<?>[] dependencyFutures = new CompletableFuture<?>[dependencies.size()];
+            int i = 0;
+            for (final String dependencyId : dependencies) {
+                dependencyFutures[i++] = futures.get(dependencyId);
+            }
+
+            // a failed dependency was forced or reported already, stopping goes on
+            final StopTarget target = targets.get(nodeId);
+            futures.put(nodeId, CompletableFuture.allOf(dependencyFutures)
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> stopNode(target, force, nodeTimeoutMillis, deadlineNanos, failures)));
+        }
+
+        final CompletableFuture<Void> all = CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]));
+        return metrics.record(ConfiguratorMetrics.PHASE, "shutdown", startNanos,
+                engine.withTimeout(all, timeoutMillis).handle((ignored, throwable) -> {
+                    if (throwable != null) {
+                        for (final Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+                            if (!entry.getValue().isDone()) {
+                                failures.add(new TimeoutException(
+                                        "\"" + entry.getKey() + "\" is not stopped in " + timeoutMillis + " ms"));
+                            }
+                        }
+                    }
+                    reportFailures(failures, targets.size());
+                    return null;
+                }));
+    }
+
+    private Map<String, StopTarget> collectTargets() {
+        final ArrayList<StopTarget> targets = new ArrayList<>();
+        for (final TargetRegistry.Registered<IServiceControl> registered : registry.getServices()) {
+            targets.add(StopTarget.service(registered));
+        }
+        for (final TargetRegistry.Registered<IModule> registered : registry.getModules()) {
+            targets.add(StopTarget.module(registered));
+        }
+        targets.sort(Comparator.comparingLong(target -> target.order));
+
+        final LinkedHashMap<String, StopTarget> targetsById = new LinkedHashMap<>();
+        for (final StopTarget target : targets) {
+            targetsById.put(target.nodeId, target);
+        }
+        return targetsById;
+    }
+
+    private static DependencyGraph buildGraph(@Nullable ConfigModel model, Map<String, StopTarget> targets,
+                                              boolean parallel) {
+        final DependencyGraph graph = new DependencyGraph();
+        final HashMap<String, List<String>> moduleNodes = new HashMap<>();
+        String previousNodeId = null;
+
+        for (final StopTarget target : targets.values()) {
+            graph.addNode(target.nodeId);
+            if (target.moduleName != null) {
+                moduleNodes.computeIfAbsent(target.serviceName, key -> new ArrayList<>()).add(target.nodeId);
+                if (targets.containsKey(serviceNodeId(target.serviceName))) {
+                    graph.addDependency(serviceNodeId(target.serviceName), target.nodeId);
+                }
+            }
+            if (!parallel) {
+                if (previousNodeId != null) graph.addDependency(previousNodeId, target.nodeId);
+                previousNodeId = target.nodeId;
+            }
+        }
+        if (!parallel || model == null) return graph;
+
+        for (final ServiceConfig serviceConfig : model.getServices().getServices()) {
+            final String serviceNodeId = serviceNodeId(serviceConfig.getName());
+            if (!graph.contains(serviceNodeId)) continue;
+
+            // started after its dependencies, so they stop after it
+            for (final String dependsOn : serviceConfig.getDependsOn()) {
+                for (final String moduleNodeId : moduleNodes.getOrDefault(dependsOn, new ArrayList<>())) {
+                    graph.addDependency(moduleNodeId, serviceNodeId);
+                }
+                if (graph.contains(serviceNodeId(dependsOn))) {
+                    graph.addDependency(serviceNodeId(dependsOn), serviceNodeId);
+                }
+            }
+
+            for (final ModuleConfig moduleConfig : serviceConfig.getModules()) {
+                final String moduleNodeId = moduleNodeId(serviceConfig.getName(), moduleConfig.getName());
+                if (!graph.contains(moduleNodeId)) continue;
+                for (final String dependsOn : moduleConfig.getDependsOn()) {
+                    final String dependsOnNodeId = dependsOn.contains("/") ?
+                            NODE_MODULE + dependsOn :
+                            moduleNodeId(serviceConfig.getName(), dependsOn);
+                    if (graph.contains(dependsOnNodeId)) graph.addDependency(dependsOnNodeId, moduleNodeId);
+                }
+            }
+        }
+        return graph;
+    }
+
+    private CompletableFuture<Void> stopNode(StopTarget target, boolean force, long nodeTimeoutMillis,
+                                             long deadlineNanos, Queue<Throwable> failures) {
+        final long startNanos = metrics.start();
+        final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        // after the global timeout everything left is forced without waiting
+        final boolean expired = remainingMillis <= 0;
+        final long timeoutMillis = expired ? 0 : Math.min(nodeTimeoutMillis, remainingMillis);
+
+        // the whole shutdown is bounded already, an expired stop is not timed on its own
+        final CompletableFuture<Void> stop = stop(target, force || expired, !expired);
+        return (expired ? stop : engine.withTimeout(stop, timeoutMillis))
+                .<Throwable>handle((ignored, throwable) -> throwable == null ? null : AsyncEngine.unwrap(throwable))
+                .thenCompose(failure -> {
+                    if (failure == null) return CompletableFuture.completedFuture(null);
+                    if (force || expired) {
+                        failures.add(describe(target, failure, timeoutMillis));
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    logger.writeWarn(describe(target, failure, timeoutMillis).getMessage() + ", forcing");
+                    final long forceTimeoutMillis = Math.max(0, Math.min(nodeTimeoutMillis,
+                            TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())));
+                    // without the target lock, it may be held by the stop which hangs
+                    return engine.withTimeout(stop(target, true, false), forceTimeoutMillis)
+                            .<Void>handle((ignored, throwable) -> {
+                                if (throwable != null) {
+                                    failures.add(describe(target, AsyncEngine.unwrap(throwable), forceTimeoutMillis));
+                                }
+                                return null;
+                            });
+                })
+                .whenComplete((ignored, throwable) -> {
+                    metrics.record(ConfiguratorMetrics.PHASE,
+                            target.moduleName == null ? "stopService" : "stopModule", startNanos);
+                });
+    }
+
+    private CompletableFuture<Void> stop(StopTarget target, boolean force, boolean locked) {
+        // never cancelled, a forced stop has to run even when the shutdown timed out
+        final CompletableFuture<Void> token = new CompletableFuture<>();
+        return engine.run(() -> {
+            // a stopped target does not wait for its lock
+            if (target.isStopped()) return;
+            if (!locked) {
+                target.stop(force);
+            } else if (target.moduleName == null) {
+                locks.runWithService(target.serviceName, () -> target.stop(force));
+            } else {
+                locks.runWithModule(target.serviceName, target.moduleName, () -> target.stop(force));
+            }
+        }, engine.getWorkers(), token);
+    }
+
+    private static Throwable describe(StopTarget target, Throwable failure, long timeoutMillis) {
+        if (failure instanceof TimeoutException) {
+            return new TimeoutException("\"" + target.nodeId + "\" is not stopped in " + timeoutMillis + " ms");
+        }
+        return new IllegalStateException("\"" + target.nodeId + "\" failed to stop: " + failure, failure);
+    }
+
+    private void reportFailures(Queue<Throwable> failures, int count) {
+        if (failures.isEmpty()) {
+            logger.writeInfo("Stopped " + count + " services and modules");
+            return;
+        }
+
+        final IllegalStateException exception = new IllegalStateException(
+                "Shutdown: " + failures.size() + " of " + count + " services and modules failed to stop");
+        for (final Throwable failure : failures) {
+            logger.writeError(failure.getMessage());
+            exception.addSuppressed(failure);
+        }
+        throw new CompletionException(exception);
+    }
+
+    // --------------
+
+    private static String serviceNodeId(String serviceName) {
+        return NODE_SERVICE + serviceName;
+    }
+
+    private static String moduleNodeId(String serviceName, String moduleName) {
+        return NODE_MODULE + TargetRegistry.moduleKey(serviceName, moduleName);
+    }
+
+    private interface StopCall {
+        void stop(boolean force) throws Throwable;
+    }
+
+    private interface StatusCall {
+        StartStopStatus getStatus() throws Throwable;
+    }
+
+    private static final class StopTarget {
+        private final String nodeId;
+        private final String serviceName;
+        @Nullable
+        private final String moduleName;
+        private final long order;
+        private final StatusCall statusCall;
+        private final StopCall stopCall;
+
+        private StopTarget(String nodeId, String serviceName, @Nullable String moduleName, long order,
+                           StatusCall statusCall, StopCall stopCall) {
+            this.nodeId = nodeId;
+            this.serviceName = serviceName;
+            this.moduleName = moduleName;
+            this.order = order;
+            this.statusCall = statusCall;
+            this.stopCall = stopCall;
+        }
+
+        static StopTarget service(TargetRegistry.Registered<IServiceControl> registered) {
+            final IServiceControl serviceControl = registered.getTarget();
+            return new StopTarget(serviceNodeId(registered.getServiceName()), registered.getServiceName(), null,
+                    registered.getOrder(), serviceControl::getStatus, serviceControl::stop);
+        }
+
+        static StopTarget module(TargetRegistry.Registered<IModule> registered) {
+            final IModule module = registered.getTarget();
+            return new StopTarget(moduleNodeId(registered.getServiceName(), registered.getModuleName()),
+                    registered.getServiceName(), registered.getModuleName(),
+                    registered.getOrder(), module::getStatus, module::stop);
+        }
+
+        boolean isStopped() throws Throwable {
+            return statusCall.getStatus() == StartStopStatus.STOPPED;
+        }
+
+        /**
+         * Already stopped targets are skipped.
+         */
+        void stop(boolean force) throws Throwable {
+            if (isStopped()) return;
+            stopCall.stop(force);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionElementConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionsConfig;
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServicesConfig;
+import org.jetbrains.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads config.xml or an included fragment into a {@link ConfigFragment} in a single streaming pass.
+ * Only direct children are taken into account, so module settings never leak into services.
+ * The factory is created once per thread and reused for every load, loads may run concurrently.
+ */
+final class StaxConfigLoader {
+    private final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return inputFactory;
+    });
+
+    ConfigFragment load(InputStream inputStream) throws XMLStreamException {
+        final XMLStreamReader reader = inputFactory.get().createXMLStreamReader(inputStream);
+        try {
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                if (!reader.hasNext()) throw new XMLStreamException("Root element not found");
+            }
+            return new Parser(reader).readServer();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static final class Parser {
+        private final XMLStreamReader reader;
+        private final HashMap<String, String> strings = new HashMap<>();
+        private final LinkedHashMap<String, Map<String, String>> settingsProfiles = new LinkedHashMap<>();
+
+        private Parser(XMLStreamReader reader) {
+            this.reader = reader;
+        }
+
+        private ConfigFragment readServer() throws XMLStreamException {
+            final ArrayList<BaseLibConfig> baseLibs = new ArrayList<>();
+            final LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+            final ArrayList<String> includes = new ArrayList<>();
+            ServicesConfig services = null;
+            ActionsConfig actions = null;
+
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "include":
+                        final String path = attr("path");
+                        if (!path.isEmpty()) includes.add(path);
+                        skipElement(reader);
+                        break;
+                    case "baseLibs":
+                        readBaseLibs(baseLibs);
+                        break;
+                    case "settings":
+                        readSettings(settings);
+                        break;
+                    case "services":
+                        if (services == null) {
+                            services = readServices();
+                        } else {
+                            skipElement(reader);
+                        }
+                        break;
+                    case "settingsProfiles":
+                        while (nextChild(reader)) {
+                            if (reader.getLocalName().equals("settingsProfile")) {
+                                readSettingsProfile();
+                            } else {
+                                skipElement(reader);
+                            }
+                        }
+                        break;
+                    case "settingsProfile":
+                        readSettingsProfile();
+                        break;
+                    case "actions":
+                        if (actions == null) {
+                            actions = readActions();
+                        } else {
+                            skipElement(reader);
+                        }
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+
+            return new ConfigFragment(baseLibs, settings, services, actions, settingsProfiles, includes);
+        }
+
+        private void readSettingsProfile() throws XMLStreamException {
+            final String id = attr("id");
+            if (settingsProfiles.containsKey(id))
+                throw new XMLStreamException("Duplicate settings profile '" + id + "'", reader.getLocation());
+            final LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+            readSettings(settings);
+            settingsProfiles.put(id, settings);
+        }
+
+        // -------------- services and modules
+
+        private ServicesConfig readServices() throws XMLStreamException {
+            final long delay = parseDelay(reader);
+            final String onLoad = attrOrNull("onLoad");
+            final boolean parallel = attr("parallel").equals("true");
+            final String threads = attrOrNull("threads");
+
+            final ArrayList<BaseLibConfig> baseLibs = new ArrayList<>();
+            final ArrayList<ServiceConfig> services = new ArrayList<>();
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "baseLibs":
+                        readBaseLibs(baseLibs);
+                        break;
+                    case "service":
+                        services.add(readService());
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+
+            return new ServicesConfig(delay, onLoad, baseLibs, services, parallel,
+                    threads == null ? 0 : Integer.parseInt(threads));
+        }
+
+        private ServiceConfig readService() throws XMLStreamException {
+            final String name = attr("name");
+            final String type = attr("type");
+            final long delay = parseDelay(reader);
+            final String onLoad = attrOrNull("onLoad");
+            final List<String> dependsOn = parseList(attr("dependsOn"));
+            final boolean lazy = attr("lazy").equals("true");
+
+            final ArrayList<BaseLibConfig> baseLibs = new ArrayList<>();
+            final LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+            final ArrayList<ModuleConfig> modules = new ArrayList<>();
+            long modulesDelay = 0;
+
+            while (nextChild(reader)) {
+                switch (reader.getLocalName()) {
+                    case "baseLibs":
+                        readBaseLibs(baseLibs);
+                        break;
+                    case "settings":
+                        readSettings(settings);
+                        break;
+                    case "modules":
+                        modulesDelay = parseDelay(reader);
+                        while (nextChild(reader)) {
+                            if (reader.getLocalName().equals("module")) {
+                                modules.add(readModule(lazy));
+                            } else {
+                                skipElement(reader);
+                            }
+                        }
+                        break;
+                    default:
+                        skipElement(reader);
+                }
+            }
+
+            return new ServiceConfig(name, type, delay, onLoad, baseLibs, settings, modulesDelay, modules, dependsOn);
+        }
+
+        private ModuleConfig readModule(boolean serviceLazy) throws XMLStreamException {
+            final String name = attr("name");
+            final String type = attr("type");
+            final long delay = parseDelay(reader);
+            final String profile = attrOrNull("profile");
+            final List<String> dependsOn = parseList(attr("dependsOn"));
+            final String lazy = attrOrNull("lazy");
+
+            LinkedHashMap<String, String> settings = null;
+            while (nextChild(reader)) {
+                if (reader.getLocalName().equals("settings")) {
+                    if (settings == null) settings = new LinkedHashMap<>();
+                    readSettings(settings);
+                } else {
+                    skipElement(reader);
+                }
+            }
+
+            return new ModuleConfig(name, type, delay, profile, settings, dependsOn,
+                    lazy == null ? serviceLazy : lazy.equals("true"));
+        }
+
+        private void readBaseLibs(List<BaseLibConfig> baseLibs) throws XMLStreamException {
+            while (nextChild(reader)) {
+                if (reader.getLocalName().equals("baseLib")) {
+                    final String libPath = attr("path");
+                    if (!libPath.isEmpty()) {
+                        baseLibs.add(new BaseLibConfig(libPath, attr("recursive").equals("true")));
+                    }
+                }
+                skipElement(reader);
+            }
+        }
+
+        private void readSettings(Map<String, String> settings) throws XMLStreamException {
+            while (nextChild(reader)) {
+                if (reader.getLocalName().equals("setting")) {
+                    settings.put(attr("key"), attr("val"));
+                }
+                skipElement(reader);
+            }
+        }
+
+        // ------------ actions
+
+        private ActionsConfig readActions() throws XMLStreamException {
+            final long delay = parseDelay(reader);
+            final ArrayList<ActionConfig> actions = new ArrayList<>();
+
+            while (nextChild(reader)) {
+                final String id = attr("id");
+                final long actionDelay = parseDelay(reader);
+                final ArrayList<ActionElementConfig> elements = new ArrayList<>();
+
+                while (nextChild(reader)) {
+                    elements.add(new ActionElementConfig(
+                            reader.getLocalName(),
+                            parseDelay(reader),
+                            attr("id"),
+                            attr("method"),
+                            attr("serviceName"),
+                            attr("moduleName"),
+                            attr("force").equals("true")
+                    ));
+                    skipElement(reader);
+                }
+
+                actions.add(new ActionConfig(id, actionDelay, elements));
+            }
+
+            return new ActionsConfig(delay, actions);
+        }
+
+        /**
+         * Equal names, keys and values of thousands of modules share one instance.
+         */
+        private String intern(String value) {
+            final String interned = strings.putIfAbsent(value, value);
+            return interned == null ? value : interned;
+        }
+
+        private String attr(String attrName) {
+            return intern(StaxConfigLoader.attr(reader, attrName));
+        }
+
+        @Nullable
+        private String attrOrNull(String attrName) {
+            final String value = reader.getAttributeValue(null, attrName);
+            return value == null ? null : intern(value);
+        }
+    }
+
+    // --------------
+
+    /**
+     * Moves to the next child of the current element.
+     *
+     * @return false if the end of the current element is reached
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) return true;
+            if (event == XMLStreamConstants.END_ELEMENT) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the end of the current element.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) depth++;
+            else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+        }
+    }
+
+    private static String attr(XMLStreamReader reader, String attrName) {
+        final String value = reader.getAttributeValue(null, attrName);
+        return value == null ? "" : value;
+    }
+
+    @Nullable
+    private static String attrOrNull(XMLStreamReader reader, String attrName) {
+        return reader.getAttributeValue(null, attrName);
+    }
+
+    private static long parseDelay(XMLStreamReader reader) {
+        final String delay = reader.getAttributeValue(null, "delay");
+        if (delay == null) return 0;
+        return Integer.parseInt(delay);
+    }
+
+    private static List<String> parseList(String value) {
+        if (value.trim().isEmpty()) return Collections.emptyList();
+        final ArrayList<String> list = new ArrayList<>();
+        for (final String item : value.split(",")) {
+            if (!item.trim().isEmpty()) list.add(item.trim());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,72 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Striped fair locks which order operations per target: operations on the same service or module
+ * run one after another in arrival order, operations on other targets run concurrently.
+ * A service operation excludes operations on modules of that service, module operations of one
+ * service only exclude each other per module. A service lock is always taken before a module lock.
+ */
+final class TargetLocks {
+    private static final int STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] serviceLocks = new ReentrantReadWriteLock[STRIPES];
+    private final ReentrantLock[] moduleLocks = new ReentrantLock[STRIPES];
+
+    TargetLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            serviceLocks[i] = new ReentrantReadWriteLock(true);
+            moduleLocks[i] = new ReentrantLock(true);
+        }
+    }
+
+    <T> T supplyWithService(String serviceName, AsyncEngine.ThrowingSupplier<T> supplier) throws Throwable {
+        final Lock serviceLock = serviceLocks[stripe(serviceName)].writeLock();
+        serviceLock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            serviceLock.unlock();
+        }
+    }
+
+    void runWithService(String serviceName, AsyncEngine.ThrowingRunnable runnable) throws Throwable {
+        supplyWithService(serviceName, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    <T> T supplyWithModule(String serviceName, String moduleName, AsyncEngine.ThrowingSupplier<T> supplier)
+            throws Throwable {
+        final Lock serviceLock = serviceLocks[stripe(serviceName)].readLock();
+        final Lock moduleLock = moduleLocks[stripe(TargetRegistry.moduleKey(serviceName, moduleName))];
+        serviceLock.lock();
+        try {
+            moduleLock.lock();
+            try {
+                return supplier.get();
+            } finally {
+                moduleLock.unlock();
+            }
+        } finally {
+            serviceLock.unlock();
+        }
+    }
+
+    void runWithModule(String serviceName, String moduleName, AsyncEngine.ThrowingRunnable runnable)
+            throws Throwable {
+        supplyWithModule(serviceName, moduleName, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private static int stripe(String key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,98 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.module.IModule;
+import com.pro100kryto.server.service.IServiceControl;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Services and modules created by the configurator, in creation order.
+ */
+final class TargetRegistry {
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<String, Registered<IServiceControl>> services = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Registered<IModule>> modules = new ConcurrentHashMap<>();
+
+    void registerService(String serviceName, IServiceControl serviceControl) {
+        services.put(serviceName, new Registered<>(serviceControl, serviceName, null, sequence.incrementAndGet()));
+    }
+
+    void registerModule(String serviceName, String moduleName, IModule module) {
+        modules.put(moduleKey(serviceName, moduleName),
+                new Registered<>(module, serviceName, moduleName, sequence.incrementAndGet()));
+    }
+
+    @Nullable
+    IServiceControl getService(String serviceName) {
+        final Registered<IServiceControl> registered = services.get(serviceName);
+        return registered == null ? null : registered.target;
+    }
+
+    @Nullable
+    IModule getModule(String serviceName, String moduleName) {
+        final Registered<IModule> registered = modules.get(moduleKey(serviceName, moduleName));
+        return registered == null ? null : registered.target;
+    }
+
+    List<Registered<IServiceControl>> getServices() {
+        return sorted(services.values());
+    }
+
+    List<Registered<IModule>> getModules() {
+        return sorted(modules.values());
+    }
+
+    static String moduleKey(String serviceName, String moduleName) {
+        return serviceName + "/" + moduleName;
+    }
+
+    private static <T> List<Registered<T>> sorted(Collection<Registered<T>> registered) {
+        final ArrayList<Registered<T>> list = new ArrayList<>(registered);
+        list.sort(Comparator.comparingLong(Registered::getOrder));
+        return list;
+    }
+
+    static final class Registered<T> {
+        private final T target;
+        private final String serviceName;
+        @Nullable
+        private final String moduleName;
+        private final long order;
+
+        private Registered(T target, String serviceName, @Nullable String moduleName, long order) {
+            this.target = target;
+            this.serviceName = serviceName;
+            this.moduleName = moduleName;
+            this.order = order;
+        }
+
+        T getTarget() {
+            return target;
+        }
+
+        String getServiceName() {
+            return serviceName;
+        }
+
+        /**
+         * @return module name or null for a service
+         */
+        @Nullable
+        String getModuleName() {
+            return moduleName;
+        }
+
+        /**
+         * @return position in the creation order
+         */
+        long getOrder() {
+            return order;
+        }
+    }
+}
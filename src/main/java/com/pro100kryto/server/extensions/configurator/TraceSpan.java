@@ -0,0 +1,141 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interval of a traced run: what caused it, which thread began it, when it began and ended.
+ * Spans which end on another thread (delays, services, actions) are asynchronous,
+ * spans of {@link #run} and {@link #supply} are a blocking call on one thread.
+ */
+final class TraceSpan {
+    /**
+     * Discards everything, used for runs which are not traced.
+     */
+    static final TraceSpan NONE = new TraceSpan(null, 0, -1, Kind.RUN, "", "");
+
+    enum Kind {
+        RUN, SERVICE, MODULE, ACTION, DELAY, CREATE, START, STOP, LIBS, SETTINGS;
+
+        String getLabel() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    @Nullable
+    private final ConfiguratorTrace trace;
+    private final int id;
+    private final int parentId;
+    private final Kind kind;
+    private final String name;
+    private final String threadName;
+    private final long startNanos;
+    private volatile long endNanos = -1;
+    private volatile boolean failed = false;
+    private volatile boolean sync = false;
+
+    TraceSpan(@Nullable ConfiguratorTrace trace, int id, int parentId, Kind kind, String name, String threadName) {
+        this.trace = trace;
+        this.id = id;
+        this.parentId = parentId;
+        this.kind = kind;
+        this.name = name;
+        this.threadName = threadName;
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return span started now on the current thread
+     */
+    TraceSpan child(Kind kind, String name) {
+        if (trace == null) return NONE;
+        return trace.newSpan(id, kind, name);
+    }
+
+    void end(boolean failed) {
+        if (trace == null || endNanos != -1) return;
+        this.failed = failed;
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends when the future is completed.
+     */
+    <T> CompletableFuture<T> end(CompletableFuture<T> future) {
+        if (trace == null) return future;
+        return future.whenComplete((ignored, throwable) -> end(throwable != null));
+    }
+
+    /**
+     * Runs a blocking call and ends.
+     */
+    void run(AsyncEngine.ThrowingRunnable runnable) throws Throwable {
+        supply(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs a blocking call and ends.
+     */
+    <T> T supply(AsyncEngine.ThrowingSupplier<T> supplier) throws Throwable {
+        sync = true;
+        try {
+            final T result = supplier.get();
+            end(false);
+            return result;
+        } catch (Throwable throwable) {
+            end(true);
+            throw throwable;
+        }
+    }
+
+    // --------------
+
+    int getId() {
+        return id;
+    }
+
+    int getParentId() {
+        return parentId;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return end or the given time if not ended
+     */
+    long getEndNanos(long defaultNanos) {
+        final long endNanos = this.endNanos;
+        return endNanos == -1 ? defaultNanos : endNanos;
+    }
+
+    boolean isEnded() {
+        return endNanos != -1;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    boolean isSync() {
+        return sync;
+    }
+}
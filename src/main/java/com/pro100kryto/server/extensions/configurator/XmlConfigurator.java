@@ -1,375 +1,703 @@
 package com.pro100kryto.server.extensions.configurator;
 
 import com.pro100kryto.server.IServerControl;
-import com.pro100kryto.server.Server;
-import com.pro100kryto.server.UtilsInternal;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
 import com.pro100kryto.server.logger.ILogger;
-import com.pro100kryto.server.module.IModule;
-import com.pro100kryto.server.service.IServiceControl;
 import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The loaded configuration is published as an immutable {@link Loaded} snapshot, readers never block.
+ * Loading is serialized by a lock, actions and configuration are ordered per target by {@link TargetLocks}.
+ */
 public final class XmlConfigurator {
     private final IServerControl serverControl;
-    private int maxCountRecursion;
-    private File fileConfigs = null;
-    private Document document = null;
+    private volatile File fileConfigs = null;
+    private final AtomicReference<Loaded> loaded = new AtomicReference<>();
+    private volatile ConfigModel appliedModel = null;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private final FragmentLoader fragmentLoader;
+    private volatile boolean documentEnabled = false;
+    private DocumentBuilder documentBuilder = null;
+    private final TargetRegistry registry = new TargetRegistry();
+    private final TargetLocks locks = new TargetLocks();
+    private final LazyModules lazyModules;
+    private final LibraryResolver libraryResolver;
+    private volatile File snapshotFile = null;
+    private final AtomicReference<ConfigWatcher> configWatcher = new AtomicReference<>();
+    private final AtomicReference<ConfigSource> configSource = new AtomicReference<>();
+    private final AtomicReference<ConfigSubscription> configSubscription = new AtomicReference<>();
+    private CompletableFuture<Void> applyChain = CompletableFuture.completedFuture(null);
     private final ILogger logger;
+    private final ConfiguratorMetrics metrics = new ConfiguratorMetrics();
+    private volatile ConfiguratorTrace lastTrace = null;
+    private volatile ConfiguratorTrace bootstrapTrace = null;
+    private volatile boolean actionTracing = false;
+    private final AsyncEngine engine;
+    private final ActionExecutor actionExecutor;
+    private final ActionFlights actionFlights;
+    private final ConfigurationExecutor configurationExecutor;
+    private final ShutdownExecutor shutdownExecutor;
 
     public XmlConfigurator(IServerControl serverControl, int maxCountRecursion, ILogger logger) {
         this.serverControl = serverControl;
-        this.maxCountRecursion = maxCountRecursion;
         this.logger = logger;
+        engine = new AsyncEngine("Configurator", metrics);
+        fragmentLoader = new FragmentLoader(new StaxConfigLoader(), metrics, ForkJoinPool.commonPool());
+        libraryResolver = new LibraryResolver(serverControl, logger, metrics);
+        lazyModules = new LazyModules(engine);
+        actionExecutor = new ActionExecutor(serverControl, engine, metrics, locks, lazyModules, maxCountRecursion);
+        actionFlights = new ActionFlights(engine, actionExecutor, metrics);
+        configurationExecutor = new ConfigurationExecutor(serverControl, logger, engine, actionExecutor, registry,
+                libraryResolver, metrics, locks, lazyModules);
+        shutdownExecutor = new ShutdownExecutor(logger, engine, registry, locks, metrics);
     }
 
     public void setMaxCountRecursion(int maxCountRecursion) {
-        this.maxCountRecursion = maxCountRecursion;
+        actionExecutor.setMaxCountRecursion(maxCountRecursion);
+    }
+
+    /**
+     * Enables building the W3C DOM on every reload for {@link #getDocument()}.
+     * Disabled by default, the configuration itself never needs it.
+     */
+    public void setDocumentEnabled(boolean documentEnabled) {
+        this.documentEnabled = documentEnabled;
+    }
+
+    /**
+     * Enables the compiled snapshot: a valid snapshot is loaded instead of parsing the XML,
+     * a stale one is rewritten after the configuration is applied.
+     *
+     * @param snapshotFile snapshot location or null to disable
+     */
+    public void setSnapshotFile(@Nullable File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public void loadFromFile(File fileConfigs)
+            throws IOException, ParserConfigurationException, SAXException, XMLStreamException {
+        loadLock.lock();
+        try {
+            this.fileConfigs = fileConfigs;
+            reloadConfiguration();
+        } finally {
+            loadLock.unlock();
+        }
     }
 
-    public synchronized void loadFromFile(File fileConfigs) throws IOException, ParserConfigurationException, SAXException {
-        this.fileConfigs = fileConfigs;
-        reloadConfiguration();
+    /**
+     * Loads the configuration file and publishes it at once, readers see either the previous
+     * or the new configuration.
+     */
+    public void reloadConfiguration()
+            throws IOException, SAXException, ParserConfigurationException, XMLStreamException {
+        loadLock.lock();
+        try {
+            final Loaded config = load();
+            loaded.set(config);
+            publish(config);
+
+            final ConfigWatcher watcher = configWatcher.get();
+            if (watcher != null) watcher.setFiles(watchedFiles(config));
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes a model received from a configuration source the same way a loaded file is published.
+     */
+    private void loadModel(ConfigModel model) throws IOException {
+        loadLock.lock();
+        try {
+            final long startNanos = metrics.start();
+            final ActionIndex actionIndex = ActionPlanCompiler.compile(model.getActions());
+            metrics.record(ConfiguratorMetrics.PHASE, "compileActions", startNanos);
+            final Loaded config = new Loaded(model, null, actionIndex, new byte[0], Collections.emptyMap(), false);
+            loaded.set(config);
+            publish(config);
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * @return config.xml and all files it includes
+     */
+    private List<Path> watchedFiles(Loaded config) {
+        final ArrayList<Path> files = new ArrayList<>(config.includedHashes.size() + 1);
+        files.add(fileConfigs.toPath());
+        for (final String includedPath : config.includedHashes.keySet()) {
+            files.add(new File(includedPath).toPath());
+        }
+        return files;
     }
 
-    public synchronized void reloadConfiguration() throws IOException, SAXException, ParserConfigurationException {
+    private Loaded load() throws IOException, SAXException, ParserConfigurationException, XMLStreamException {
+        final File fileConfigs = this.fileConfigs;
+        if (fileConfigs == null) throw new IllegalStateException("Configs file is not set");
         if (!fileConfigs.exists()) throw new FileNotFoundException();
 
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-        document = dBuilder.parse(fileConfigs);
-        document.normalize();
+        final long reloadStartNanos = metrics.start();
+        final byte[] bytes = Files.readAllBytes(fileConfigs.toPath());
+        final byte[] configHash = ConfigSnapshot.hash(bytes);
+        long startNanos = metrics.start();
+        final ConfigSnapshot snapshot = readSnapshot(configHash);
+        final ConfigModel model;
+        final Map<String, byte[]> includedHashes;
+        final boolean snapshotPending;
+        if (snapshot != null) {
+            snapshotPending = !loadSnapshotLibs(snapshot);
+            model = snapshot.getModel();
+            includedHashes = snapshot.getIncludedHashes();
+            metrics.record(ConfiguratorMetrics.PHASE, "readSnapshot", startNanos);
+        } else {
+            snapshotPending = true;
+            startNanos = metrics.start();
+            final FragmentLoader.Result result = fragmentLoader.load(fileConfigs, bytes, configHash);
+            model = result.getModel();
+            includedHashes = result.getIncludedHashes();
+            metrics.record(ConfiguratorMetrics.PHASE, "parse", startNanos);
+            if (!includedHashes.isEmpty()) {
+                logger.writeInfo("Loaded " + (includedHashes.size() + 1) + " configuration files, "
+                        + result.getParsed() + " parsed");
+            }
+        }
+
+        Document document = null;
+        if (documentEnabled) {
+            startNanos = metrics.start();
+            if (documentBuilder == null) {
+                documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            }
+            documentBuilder.reset();
+            document = documentBuilder.parse(new ByteArrayInputStream(bytes), fileConfigs.toURI().toString());
+            document.normalize();
+            metrics.record(ConfiguratorMetrics.PHASE, "parseDocument", startNanos);
+        }
+
+        startNanos = metrics.start();
+        final ActionIndex actionIndex = ActionPlanCompiler.compile(model.getActions());
+        metrics.record(ConfiguratorMetrics.PHASE, "compileActions", startNanos);
+        metrics.record(ConfiguratorMetrics.PHASE, "reload", reloadStartNanos);
+        return new Loaded(model, document, actionIndex, configHash, includedHashes, snapshotPending);
     }
 
+    @Nullable
+    private ConfigSnapshot readSnapshot(byte[] configHash) {
+        final File snapshotFile = this.snapshotFile;
+        if (snapshotFile == null) return null;
+
+        final ConfigSnapshot snapshot;
+        try {
+            snapshot = ConfigSnapshot.read(snapshotFile);
+        } catch (IOException | RuntimeException exception) {
+            logger.writeWarn("Failed to read snapshot \"" + snapshotFile + "\": " + exception);
+            return null;
+        }
+        if (snapshot == null || !snapshot.matches(configHash)) return null;
+        return snapshot;
+    }
+
+    /**
+     * @return false if some of the resolved baseLibs are outdated and the snapshot has to be rewritten
+     */
+    private boolean loadSnapshotLibs(ConfigSnapshot snapshot) {
+        boolean valid = true;
+        for (final Map.Entry<String, LibraryResolver.Resolution> entry : snapshot.getLibs().entrySet()) {
+            if (entry.getValue().isValid()) {
+                libraryResolver.putResolved(entry.getKey(), entry.getValue());
+            } else {
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private void writeSnapshot(Loaded config) {
+        final File snapshotFile = this.snapshotFile;
+        if (snapshotFile == null || loaded.get() != config) return;
+        if (!config.snapshotPending.compareAndSet(true, false)) return;
+
+        try {
+            final long startNanos = metrics.start();
+            ConfigSnapshot.create(config.configHash, config.includedHashes, config.model,
+                            libraryResolver.getResolved())
+                    .write(snapshotFile);
+            metrics.record(ConfiguratorMetrics.PHASE, "writeSnapshot", startNanos);
+        } catch (IOException | RuntimeException exception) {
+            logger.writeWarn("Failed to write snapshot \"" + snapshotFile + "\": " + exception);
+        }
+    }
+
+    @Nullable
+    public ConfigModel getModel() {
+        final Loaded config = loaded.get();
+        return config == null ? null : config.model;
+    }
+
+    /**
+     * @return durations and counters of loading, configuration and actions
+     */
+    public ConfiguratorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return span tree of the last started execConfiguration or traced execAction or execActions,
+     * null if nothing was traced
+     */
+    @Nullable
+    public ConfiguratorTrace getLastTrace() {
+        return lastTrace;
+    }
+
+    /**
+     * @return span tree of the last started execConfiguration, null if it was not executed
+     */
+    @Nullable
+    public ConfiguratorTrace getBootstrapTrace() {
+        return bootstrapTrace;
+    }
+
+    /**
+     * Enables tracing of execAction and execActions, disabled by default so actions do not pay for spans.
+     * execConfiguration is always traced.
+     */
+    public void setActionTracing(boolean actionTracing) {
+        this.actionTracing = actionTracing;
+    }
+
+    public boolean isActionTracing() {
+        return actionTracing;
+    }
+
+    private ConfiguratorTrace startTrace(String name) {
+        final ConfiguratorTrace trace = new ConfiguratorTrace(name);
+        lastTrace = trace;
+        return trace;
+    }
+
+    private TraceSpan startActionTrace(String name) {
+        return actionTracing ? startTrace(name).getRoot() : TraceSpan.NONE;
+    }
+
+    /**
+     * @return DOM of the last loaded configuration or null if {@link #setDocumentEnabled(boolean)} is off
+     */
     @Nullable
     public Document getDocument() {
-        return document;
+        final Loaded config = loaded.get();
+        return config == null || !documentEnabled ? null : config.document;
     }
 
     // -------------- services and modules
 
-    public synchronized void execConfiguration() throws Throwable {
-        if (document==null)
+    /**
+     * Blocks until the whole configuration is applied.
+     */
+    public void execConfiguration() throws Throwable {
+        AsyncEngine.await(execConfigurationAsync());
+    }
+
+    /**
+     * Delays of the configuration do not hold any thread.
+     * Cancelling the returned future stops executing further steps.
+     * Services and modules which are already created by the configurator are reused.
+     */
+    public CompletableFuture<Void> execConfigurationAsync() {
+        final Loaded config = loaded.get();
+        if (config==null)
+            return AsyncEngine.failed(new IllegalStateException("Configs not loaded"));
+
+        final long startNanos = metrics.start();
+        final ConfiguratorTrace trace = startTrace("execConfiguration");
+        bootstrapTrace = trace;
+        final TraceSpan span = trace.getRoot();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        // applied before the result completes, so whatever waits for it sees the applied model
+        AsyncEngine.forward(span.end(metrics.record(ConfiguratorMetrics.PHASE, "execConfiguration", startNanos,
+                configurationExecutor.execConfiguration(config.model, config.actionIndex, span, result)
+                        .thenRun(() -> appliedModel = config.model))), result);
+        result.thenRun(() -> writeSnapshot(config));
+        return result;
+    }
+
+    // -------------- hot reload
+
+    /**
+     * Watches the configuration file and applies changes with {@link #applyChanges()}
+     * once no writes happened for the given time.
+     */
+    public void startHotReload(long debounceMillis) throws IOException {
+        final File fileConfigs = this.fileConfigs;
+        final Loaded config = loaded.get();
+        if (fileConfigs == null || config == null)
             throw new IllegalStateException("Configs not loaded");
+        if (configWatcher.get() != null)
+            throw new IllegalStateException("Hot reload is already started");
 
-        // server
-        final Element elServer = document.getDocumentElement();
-
-        // server - baseLibs
-        if (elServer.getElementsByTagName("baseLibs").getLength() != 0){
-            final NodeList nodeListBaseLibs = elServer.getElementsByTagName("baseLibs");
-            for (int i = 0; i < nodeListBaseLibs.getLength(); i++) {
-                if (nodeListBaseLibs.item(i).getNodeType() != Node.ELEMENT_NODE) continue;
-                final Element elBaseLibs = (Element) nodeListBaseLibs.item(i);
-                if (!elBaseLibs.getParentNode().getNodeName().equals(elServer.getNodeName())) continue;
-                final NodeList nodeListBaseLib = elBaseLibs.getElementsByTagName("baseLib");
-                for (int j = 0; j < nodeListBaseLib.getLength(); j++) {
-                    if (nodeListBaseLib.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                    final Element elBaseLib = (Element) nodeListBaseLib.item(j);
-                    final String libPath = elBaseLib.getAttribute("path");
-                    final boolean addRecursive =
-                            elBaseLib.hasAttribute("recursive") &&
-                            elBaseLib.getAttribute("recursive").equals("true");
-                    if (libPath.isEmpty()) continue;
-
-                    final File fileBaseLib = createFileLib(libPath);
-                    if (addRecursive){
-                        final ArrayList<URL> urlList = new ArrayList<>();
-                        UtilsInternal.readJarClassPathAndCheck(logger, fileBaseLib, urlList);
-                        for (final URL url : urlList) {
-                            serverControl.addBaseLib(url);
-                        }
-                    }
-                    else {
-                        serverControl.addBaseLib(fileBaseLib.toURI().toURL());
+        final ConfigWatcher watcher = new ConfigWatcher(watchedFiles(config), debounceMillis, () ->
+                applyChanges().whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        logger.writeError("Hot reload failed: " + AsyncEngine.unwrap(throwable));
                     }
-                }
-            }
+                }), engine, logger);
+        if (!configWatcher.compareAndSet(null, watcher)) {
+            watcher.close();
+            throw new IllegalStateException("Hot reload is already started");
         }
+        logger.writeInfo("Hot reload started for \"" + fileConfigs + "\"");
+    }
 
-        // server - settings
-        if (elServer.getElementsByTagName("settings").getLength()!=0)
-        {
-            final Element elServerSettings = (Element) elServer.getElementsByTagName("settings").item(0);
-            final NodeList nodeListSetting = elServerSettings.getElementsByTagName("setting");
-
-            for (int i = 0; i < nodeListSetting.getLength(); i++) {
-                if (nodeListSetting.item(i).getNodeType() != Node.ELEMENT_NODE) continue;
-                final Element elementSetting = (Element) nodeListSetting.item(i);
-                final String settingKey = elementSetting.getAttribute("key");
-                final String settingVal = elementSetting.getAttribute("val");
-                serverControl.setSetting(settingKey, settingVal);
-            }
+    public void stopHotReload() throws IOException {
+        final ConfigWatcher watcher = configWatcher.getAndSet(null);
+        if (watcher == null) return;
+        watcher.close();
+        logger.writeInfo("Hot reload stopped");
+    }
+
+    public boolean isHotReloadStarted() {
+        return configWatcher.get() != null;
+    }
+
+    /**
+     * Reloads the configuration file and applies only the difference to the applied configuration:
+     * changed settings, new baseLibs, services and modules. Anything else is reported.
+     * Calls are applied one after another.
+     */
+    public CompletableFuture<Void> applyChanges() {
+        return applyChanges(this::reloadConfiguration);
+    }
+
+    /**
+     * @param reload publishes the configuration to apply
+     */
+    private CompletableFuture<Void> applyChanges(AsyncEngine.ThrowingRunnable reload) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        loadLock.lock();
+        try {
+            applyChain = applyChain
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> applyChangesNow(reload, result));
+            AsyncEngine.forward(applyChain, result);
+        } finally {
+            loadLock.unlock();
         }
+        return result;
+    }
 
-        // server - services
-        final Element elServices = (Element) elServer.getElementsByTagName("services").item(0);
-        checkDelayAttr(elServices);
-
-        // server - services - baseLibs
-        if (elServices.getElementsByTagName("baseLibs").getLength() != 0){
-            final NodeList nodeListBaseLibs = elServices.getElementsByTagName("baseLibs");
-            for (int i = 0; i < nodeListBaseLibs.getLength(); i++) {
-                if (nodeListBaseLibs.item(i).getNodeType() != Node.ELEMENT_NODE) continue;
-                final Element elBaseLibs = (Element) nodeListBaseLibs.item(i);
-                if (!elBaseLibs.getParentNode().getNodeName().equals(elServices.getNodeName())) continue;
-                final NodeList nodeListBaseLib = elBaseLibs.getElementsByTagName("baseLib");
-                for (int j = 0; j < nodeListBaseLib.getLength(); j++) {
-                    if (nodeListBaseLib.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                    final Element elBaseLib = (Element) nodeListBaseLib.item(j);
-                    final String libPath = elBaseLib.getAttribute("path");
-                    final boolean addRecursive =
-                            elBaseLib.hasAttribute("recursive") &&
-                                    elBaseLib.getAttribute("recursive").equals("true");
-                    if (libPath.isEmpty()) continue;
-
-                    final File fileBaseLib = createFileLib(libPath);
-                    if (addRecursive){
-                        final ArrayList<URL> urlList = new ArrayList<>();
-                        UtilsInternal.readJarClassPathAndCheck(logger, fileBaseLib, urlList);
-                        for (final URL url : urlList) {
-                            serverControl.getServiceManager().addBaseLib(url);
-                        }
-                    }
-                    else {
-                        serverControl.getServiceManager().addBaseLib(fileBaseLib.toURI().toURL());
-                    }
-                }
-            }
+    private CompletableFuture<Void> applyChangesNow(AsyncEngine.ThrowingRunnable reload,
+                                                    CompletableFuture<Void> token) {
+        final Loaded config;
+        final ConfigDiff diff;
+        loadLock.lock();
+        try {
+            final ConfigModel applied = appliedModel;
+            if (applied == null)
+                throw new IllegalStateException("Configuration is not applied yet");
+            reload.run();
+            config = loaded.get();
+            diff = ConfigDiff.compute(applied, config.model);
+        } catch (Throwable throwable) {
+            return AsyncEngine.failed(throwable);
+        } finally {
+            loadLock.unlock();
         }
 
-        // server -  services - service
-        final NodeList nodeListService = elServices.getElementsByTagName("service");
-        for (int i = 0; i < nodeListService.getLength(); i++) {
-            if (nodeListService.item(i).getNodeType() != Node.ELEMENT_NODE) continue;
-            final Element elService = (Element) nodeListService.item(i);
-            final String serviceName = elService.getAttribute("name");
-            final String serviceType = elService.getAttribute("type");
-
-            checkDelayAttr(elService);
-
-            final IServiceControl serviceControl =
-                    serverControl.getServiceManager().createService(serviceType, serviceName);
-
-            // server - services - service - baseLibs
-            if (elService.getElementsByTagName("baseLibs").getLength() != 0){
-                final NodeList nodeListBaseLibs = elService.getElementsByTagName("baseLibs");
-                for (int j = 0; j < nodeListBaseLibs.getLength(); j++) {
-                    if (nodeListBaseLibs.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                    final Element elBaseLibs = (Element) nodeListBaseLibs.item(j);
-                    if (!elBaseLibs.getParentNode().getNodeName().equals(elService.getNodeName())) continue;
-                    final NodeList nodeListBaseLib = elBaseLibs.getElementsByTagName("baseLib");
-                    for (int k = 0; k < nodeListBaseLib.getLength(); k++) {
-                        if (nodeListBaseLib.item(k).getNodeType() != Node.ELEMENT_NODE) continue;
-                        final Element elBaseLib = (Element) nodeListBaseLib.item(k);
-                        final String libPath = elBaseLib.getAttribute("path");
-                        final boolean addRecursive =
-                                elBaseLib.hasAttribute("recursive") &&
-                                        elBaseLib.getAttribute("recursive").equals("true");
-                        if (libPath.isEmpty()) continue;
-
-                        final File fileBaseLib = createFileLib(libPath);
-                        if (addRecursive){
-                            final ArrayList<URL> urlList = new ArrayList<>();
-                            UtilsInternal.readJarClassPathAndCheck(logger, fileBaseLib, urlList);
-                            for (final URL url : urlList) {
-                                serviceControl.addBaseLib(url);
-                            }
-                        }
-                        else {
-                            serviceControl.addBaseLib(fileBaseLib.toURI().toURL());
-                        }
-                    }
-                }
-            }
+        final long startNanos = metrics.start();
+        if (diff.isEmpty()) {
+            logger.writeInfo("No configuration changes");
+            return CompletableFuture.completedFuture(null);
+        }
+        logger.writeInfo("Applying configuration changes: " + diff);
+        return metrics.record(ConfiguratorMetrics.PHASE, "applyChanges", startNanos,
+                configurationExecutor.applyDiff(diff, config.actionIndex, token))
+                .thenRun(() -> appliedModel = config.model);
+    }
 
-            // server - services - service - settings
-            if (elService.getElementsByTagName("settings").getLength() != 0){
-                final NodeList nodeListSettings = elService.getElementsByTagName("settings");
-                for (int j = 0; j < nodeListSettings.getLength(); j++) {
-                    if (nodeListSettings.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                    final Element elSettings = (Element) nodeListSettings.item(j);
-                    final NodeList nodeListSetting = elSettings.getElementsByTagName("setting");
-                    for (int k = 0; k < nodeListSetting.getLength(); k++) {
-                        if (nodeListSetting.item(k).getNodeType() != Node.ELEMENT_NODE) continue;
-                        final Element elSetting = (Element) nodeListSetting.item(k);
-                        final String settingKey = elSetting.getAttribute("key");
-                        final String settingVal = elSetting.getAttribute("val");
-                        serviceControl.setSetting(settingKey, settingVal);
-                    }
-                }
-            }
+    // -------------- distribution
+
+    /**
+     * Serves the loaded configuration and every reloaded one to subscribers on the loopback port
+     * which know the key.
+     *
+     * @param port 0 for any free port
+     * @param keyFile secret shared with the subscribers, accessible by its owner only
+     * @return the port
+     */
+    public int startDistribution(int port, File keyFile) throws IOException {
+        final ConfigSource source = new ConfigSource(port, DistributionKey.read(keyFile), logger);
+        if (!configSource.compareAndSet(null, source)) {
+            source.close();
+            throw new IllegalStateException("Distribution is already started");
+        }
+        final Loaded config = loaded.get();
+        if (config != null) source.publish(config.model);
+        logger.writeInfo("Serving the configuration on port " + source.getPort());
+        return source.getPort();
+    }
 
-            // server - services - service - modules
-            if (elService.getElementsByTagName("modules").getLength() != 0){
-                final NodeList nodeListModules = elService.getElementsByTagName("modules");
-                for (int j = 0; j < nodeListModules.getLength(); j++) {
-                    if (nodeListModules.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                    final Element elModules = (Element) nodeListModules.item(j);
-                    final NodeList nodeListModule = elModules.getElementsByTagName("module");
-                    for (int k = 0; k < nodeListModule.getLength(); k++) {
-                        if (nodeListModule.item(k).getNodeType() != Node.ELEMENT_NODE) continue;
-                        final Element elModule = (Element) nodeListModule.item(k);
-
-                        final IModule module = serviceControl.createModule(
-                                elModule.getAttribute("type"),
-                                elModule.getAttribute("name")
-                        );
-
-                        final NodeList nodeListModuleElements = elModule.getChildNodes();
-                        for (int l = 0; l < nodeListModuleElements.getLength(); l++) {
-                            if (nodeListModuleElements.item(l).getNodeType() != Node.ELEMENT_NODE) continue;
-                            final Element elModuleEl = (Element) nodeListModuleElements.item(l);
-
-                            if (elModuleEl.getTagName().equals("settings")) {
-
-                                final Map<String, String> settings = new HashMap<>(nodeListModuleElements.getLength());
-                                final NodeList nodeListSetting = elModuleEl.getChildNodes();
-
-                                for (int m = 0; m < nodeListSetting.getLength(); m++) {
-                                    if (nodeListSetting.item(m).getNodeType() != Node.ELEMENT_NODE) continue;
-                                    final Element elSetting = (Element) nodeListSetting.item(m);
-                                    settings.put(
-                                            elSetting.getAttribute("key"),
-                                            elSetting.getAttribute("val")
-                                    );
-                                }
-
-                                module.setSettings(settings);
-                            }
-                            checkDelayAttr(elModule);
-                        }
-                        checkDelayAttr(elModules);
-                    }
+    /**
+     * Receives the configuration from a source on the loopback port instead of a file.
+     * Only a source which knows the key is accepted.
+     * Received configurations are applied one after another: executed while none is applied,
+     * also after a failed execution, and applied as changes after that. Services and modules created
+     * by a failed execution are kept and reused by the next one instead of being created again.
+     *
+     * @param keyFile secret shared with the source, accessible by its owner only
+     * @return completed once the first received configuration is applied
+     */
+    public CompletableFuture<Void> subscribe(int port, File keyFile) {
+        final DistributionKey key;
+        try {
+            key = DistributionKey.read(keyFile);
+        } catch (IOException ioException) {
+            return AsyncEngine.failed(ioException);
+        }
+        final CompletableFuture<Void> firstApplied = new CompletableFuture<>();
+        final CompletableFuture<?>[] updates = {CompletableFuture.completedFuture(null)};
+        final ConfigSubscription subscription = new ConfigSubscription(port, key, model -> {
+            // called by one thread, every update waits for the previous one
+            final CompletableFuture<Void> update = updates[0]
+                    .handle((ignored, throwable) -> null)
+                    .thenCompose(ignored -> applyReceived(model));
+            updates[0] = update;
+            if (!firstApplied.isDone()) {
+                AsyncEngine.forward(update, firstApplied);
+                return;
+            }
+            update.whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    logger.writeError("Failed to apply received configuration: " + AsyncEngine.unwrap(throwable));
                 }
+            });
+        }, logger);
+        if (!configSubscription.compareAndSet(null, subscription)) {
+            try {
+                subscription.close();
+            } catch (IOException ignored) {
             }
+            return AsyncEngine.failed(new IllegalStateException("Already subscribed"));
+        }
+        return firstApplied;
+    }
 
-            checkOnLoadAttr(elService);
+    private CompletableFuture<Void> applyReceived(ConfigModel model) {
+        if (appliedModel != null) return applyChanges(() -> loadModel(model));
+        try {
+            loadModel(model);
+        } catch (IOException ioException) {
+            return AsyncEngine.failed(ioException);
         }
-        checkOnLoadAttr(elServices);
+        return execConfigurationAsync();
     }
 
-    // ------------ actions
+    public void stopDistribution() throws IOException {
+        final ConfigSubscription subscription = configSubscription.getAndSet(null);
+        if (subscription != null) subscription.close();
+        final ConfigSource source = configSource.getAndSet(null);
+        if (source != null) {
+            source.close();
+            logger.writeInfo("Configuration distribution stopped");
+        }
+    }
+
+    public String getDistributionStatus() {
+        final StringBuilder status = new StringBuilder();
+        final ConfigSource source = configSource.get();
+        if (source != null) {
+            status.append("serving on port ").append(source.getPort())
+                    .append(", revision ").append(source.getRevision())
+                    .append(", ").append(source.getSubscriberCount()).append(" subscribers");
+        }
+        final ConfigSubscription subscription = configSubscription.get();
+        if (subscription != null) {
+            if (status.length() != 0) status.append("; ");
+            status.append("subscribed to port ").append(subscription.getPort())
+                    .append(subscription.isConnected() ? ", connected" : ", disconnected")
+                    .append(", revision ").append(subscription.getRevision());
+        }
+        return status.length() == 0 ? "not distributed" : status.toString();
+    }
 
-    public synchronized void execAction(String actionId) throws Throwable {
-        execAction(actionId, 1);
+    private void publish(Loaded config) throws IOException {
+        final ConfigSource source = configSource.get();
+        if (source == null) return;
+        final long startNanos = metrics.start();
+        source.publish(config.model);
+        metrics.record(ConfiguratorMetrics.PHASE, "publish", startNanos);
     }
 
-    private void execAction(String actionId, int recursionCount) throws Throwable{
-        if (document==null)
-            throw new IllegalStateException("Configs not loaded");
+    // -------------- lazy modules
 
-        if (recursionCount > maxCountRecursion)
-            throw new IllegalStateException("Too many recursions");
-
-        Element elActions = (Element) document.getDocumentElement().getElementsByTagName("actions").item(0);
-        checkDelayAttr(elActions);
-        NodeList nodeListAction = elActions.getChildNodes();
-
-        for(int i=0; i < nodeListAction.getLength(); i++){
-            if (nodeListAction.item(i).getNodeType() != Node.ELEMENT_NODE) continue;
-            Element elAction = (Element) nodeListAction.item(i);
-            String actionId_ = elAction.getAttribute("id");
-            if (!actionId.equals(actionId_)) continue;
-
-            checkDelayAttr(elAction);
-            NodeList nodeListActionElements = elAction.getChildNodes();
-
-            for(int j=0; j < nodeListActionElements.getLength(); j++){
-                if (nodeListActionElements.item(j).getNodeType() != Node.ELEMENT_NODE) continue;
-                Element elActionElement = (Element) nodeListActionElements.item(j);
-                checkDelayAttr(elActionElement);
-
-                switch (elActionElement.getTagName()){
-                    case "action":
-                        execAction(elActionElement.getAttribute("id"), recursionCount+1);
-                        break;
-                    case "service":
-                        {
-                            String actionMethod = elActionElement.getAttribute("method");
-                            String serviceName = elActionElement.getAttribute("serviceName");
-                            switch (actionMethod) {
-                                case "start":
-                                    serverControl.getServiceManager().getService(serviceName).start();
-                                    break;
-                                case "stop":
-                                    serverControl.getServiceManager().getService(serviceName).stop(
-                                            elActionElement.getAttribute("force").equals("true")
-                                    );
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Unsupported method '" + actionMethod + "'");
-                            }
-                        }
-                        break;
-                    case "module":
-                        {
-                            String actionMethod = elActionElement.getAttribute("method");
-                            String serviceName = elActionElement.getAttribute("serviceName");
-                            String moduleName = elActionElement.getAttribute("moduleName");
-                            switch (actionMethod){
-                                case "start":
-                                    serverControl.getServiceManager()
-                                            .getService(serviceName)
-                                            .getModule(moduleName)
-                                            .start();
-                                    break;
-                                case "stop":
-                                    serverControl.getServiceManager()
-                                            .getService(serviceName)
-                                            .getModule(moduleName)
-                                            .stop(elActionElement.getAttribute("force").equals("true"));
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Unsupported method '" + actionMethod + "'");
-                            }
-                        }
-                        break;
-                    default:
-                        throw new UnsupportedOperationException("Unsupported tag '"+elActionElement.getTagName()+"'");
-                }
-            }
-            break;
-        }
+    /**
+     * Creates a module with lazy="true" unless it is created already. Concurrent calls and start actions
+     * share one creation.
+     */
+    public CompletableFuture<Void> createLazyModule(String serviceName, String moduleName) {
+        if (!lazyModules.isLazy(serviceName, moduleName))
+            return AsyncEngine.failed(new IllegalStateException(
+                    "Module \"" + serviceName + "/" + moduleName + "\" is not lazy or not configured"));
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        AsyncEngine.forward(lazyModules.ensureCreated(serviceName, moduleName, result), result);
+        return result;
     }
 
-    // --------------
+    /**
+     * @return "serviceName/moduleName" of lazy modules which are not created yet
+     */
+    public List<String> getPendingLazyModules() {
+        return lazyModules.getPending();
+    }
+
+    // -------------- shutdown
+
+    /**
+     * Stops created modules and services, modules before their service and dependencies after their
+     * dependents. Independent branches stop concurrently when the applied configuration is parallel.
+     *
+     * @param force stop(true) right away, otherwise a failed or hanging stop is escalated to stop(true)
+     * @param nodeTimeoutMillis time for one stop call
+     * @param timeoutMillis time for the whole shutdown
+     */
+    public CompletableFuture<Void> shutdown(boolean force, long nodeTimeoutMillis, long timeoutMillis) {
+        // threads of the engine are released once nothing is stopped anymore, a later start creates them again
+        return shutdownExecutor.shutdown(appliedModel, force, nodeTimeoutMillis, timeoutMillis)
+                .whenComplete((ignored, throwable) -> engine.close());
+    }
+
+    // ------------ actions
+
+    /**
+     * Requests of an action within the given time after its successful execution get that result
+     * without executing again, 0 (the default) disables.
+     */
+    public void setActionResultWindow(long resultWindowMillis) {
+        actionFlights.setResultWindow(resultWindowMillis);
+    }
 
-    private void checkOnLoadAttr(Element element) throws Throwable {
-        if (element.hasAttribute("onLoad")) // TODO: rename attr to "actionAfter", add attr "actionBefore"
-            execAction(element.getAttribute("onLoad"));
+    /**
+     * Delays of the action do not hold any thread.
+     * Cancelling the returned future stops executing further steps unless other requests share them.
+     * Steps on the same service or module are ordered, other actions run concurrently.
+     * Concurrent requests for the same action share one execution, starting a started target
+     * or stopping a stopped one does nothing.
+     */
+    public CompletableFuture<Void> execAction(String actionId) {
+        final Loaded config = loaded.get();
+        if (config==null)
+            return AsyncEngine.failed(new IllegalStateException("Configs not loaded"));
+
+        final TraceSpan span = startActionTrace("execAction");
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        AsyncEngine.forward(span.end(actionFlights.execAction(config.actionIndex, actionId, span, result)), result);
+        return result;
     }
 
-    private void checkDelayAttr(Element element) throws InterruptedException {
-        if (element.hasAttribute("delay")) {
-            String delayStr = element.getAttribute("delay");
-            int delay = Integer.parseInt(delayStr);
-            Thread.sleep(delay);
+    /**
+     * Executes distinct actions concurrently, at most parallelism at a time, all with the same loaded
+     * configuration. A failed action does not stop the others.
+     *
+     * @return results in the order of the first occurrence of each id, completed when all actions are done
+     */
+    public CompletableFuture<List<ActionResult>> execActions(Collection<String> actionIds, int parallelism) {
+        if (parallelism < 1)
+            return AsyncEngine.failed(new IllegalArgumentException("Parallelism must be positive"));
+        final Loaded config = loaded.get();
+        if (config==null)
+            return AsyncEngine.failed(new IllegalStateException("Configs not loaded"));
+
+        final List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(actionIds));
+        final ActionResult[] results = new ActionResult[distinctIds.size()];
+        final AtomicInteger next = new AtomicInteger();
+
+        final TraceSpan span = startActionTrace("execActions");
+        final int lanes = Math.min(parallelism, distinctIds.size());
+        final CompletableFuture<?>[] laneFutures = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) {
+            laneFutures[i] = execActionsLane(config, distinctIds, results, next, span);
         }
+        return span.end(CompletableFuture.allOf(laneFutures)).thenApply(ignored -> {
+            final ArrayList<ActionResult> resultList = new ArrayList<>(results.length);
+            for (final ActionResult actionResult : results) {
+                resultList.add(actionResult);
+            }
+            return resultList;
+        });
+    }
+
+    /**
+     * Takes the next action once the previous one of the lane is done.
+     */
+    private CompletableFuture<Void> execActionsLane(Loaded config, List<String> actionIds,
+                                                    ActionResult[] results, AtomicInteger next, TraceSpan span) {
+        final int index = next.getAndIncrement();
+        if (index >= actionIds.size()) return CompletableFuture.completedFuture(null);
+
+        final String actionId = actionIds.get(index);
+        final long startNanos = System.nanoTime();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        AsyncEngine.forward(actionFlights.execAction(config.actionIndex, actionId, span, result), result);
+        return result
+                .handle((ignored, throwable) -> {
+                    results[index] = new ActionResult(actionId,
+                            throwable == null ? null : AsyncEngine.unwrap(throwable),
+                            System.nanoTime() - startNanos);
+                    return null;
+                })
+                .thenComposeAsync(ignored -> execActionsLane(config, actionIds, results, next, span),
+                        engine.getWorkers());
     }
 
-    private File createFileLib(final String path){
-        final File fileLib = new File(
-                path.startsWith("file:") ?
-                        path :
-                        Server.getInstance().getWorkingPath() + File.separator
-                                + "core" + File.separator
-                                + path.replace("/", File.separator).replace("\\", File.separator));
-        if (!fileLib.exists()) logger.writeWarn("\""+path + "\" not found");
-        return fileLib;
+    // --------------
+
+    /**
+     * Immutable result of one load: the model, its DOM, compiled actions and the snapshot state.
+     */
+    private static final class Loaded {
+        private final ConfigModel model;
+        @Nullable
+        private final Document document;
+        private final ActionIndex actionIndex;
+        private final byte[] configHash;
+        private final Map<String, byte[]> includedHashes;
+        private final AtomicBoolean snapshotPending;
+
+        private Loaded(ConfigModel model, @Nullable Document document, ActionIndex actionIndex,
+                       byte[] configHash, Map<String, byte[]> includedHashes, boolean snapshotPending) {
+            this.model = model;
+            this.document = document;
+            this.actionIndex = actionIndex;
+            this.configHash = configHash;
+            this.includedHashes = includedHashes;
+            this.snapshotPending = new AtomicBoolean(snapshotPending);
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class ActionConfig {
+    private final String id;
+    private final long delay;
+    private final List<ActionElementConfig> elements;
+
+    public ActionConfig(String id, long delay, List<ActionElementConfig> elements) {
+        this.id = id;
+        this.delay = delay;
+        this.elements = Collections.unmodifiableList(elements);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    public List<ActionElementConfig> getElements() {
+        return elements;
+    }
+}
@@ -0,0 +1,57 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+/**
+ * Child element of an &lt;action&gt;. Tags and methods are kept as written,
+ * they are validated when actions are compiled.
+ */
+public final class ActionElementConfig {
+    private final String tag;
+    private final long delay;
+    private final String id;
+    private final String method;
+    private final String serviceName;
+    private final String moduleName;
+    private final boolean force;
+
+    public ActionElementConfig(String tag, long delay, String id, String method,
+                               String serviceName, String moduleName, boolean force) {
+        this.tag = tag;
+        this.delay = delay;
+        this.id = id;
+        this.method = method;
+        this.serviceName = serviceName;
+        this.moduleName = moduleName;
+        this.force = force;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return id of the nested action for the "action" tag
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    public boolean isForce() {
+        return force;
+    }
+}
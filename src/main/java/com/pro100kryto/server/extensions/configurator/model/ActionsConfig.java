@@ -0,0 +1,24 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class ActionsConfig {
+    public static final ActionsConfig EMPTY = new ActionsConfig(0, Collections.<ActionConfig>emptyList());
+
+    private final long delay;
+    private final List<ActionConfig> actions;
+
+    public ActionsConfig(long delay, List<ActionConfig> actions) {
+        this.delay = delay;
+        this.actions = Collections.unmodifiableList(actions);
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    public List<ActionConfig> getActions() {
+        return actions;
+    }
+}
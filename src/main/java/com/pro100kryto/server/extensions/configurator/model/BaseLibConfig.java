@@ -0,0 +1,37 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+public final class BaseLibConfig {
+    private final String path;
+    private final boolean recursive;
+
+    public BaseLibConfig(String path, boolean recursive) {
+        this.path = path;
+        this.recursive = recursive;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isRecursive() {
+        return recursive;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BaseLibConfig)) return false;
+        final BaseLibConfig that = (BaseLibConfig) o;
+        return recursive == that.recursive && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * path.hashCode() + (recursive ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return path + (recursive ? " (recursive)" : "");
+    }
+}
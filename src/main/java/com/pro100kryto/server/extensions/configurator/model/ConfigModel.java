@@ -0,0 +1,76 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class ConfigModel {
+    private final List<BaseLibConfig> baseLibs;
+    private final Map<String, String> settings;
+    private final ServicesConfig services;
+    private final ActionsConfig actions;
+    private final Map<String, Map<String, String>> settingsProfiles;
+
+    public ConfigModel(List<BaseLibConfig> baseLibs, Map<String, String> settings,
+                       ServicesConfig services, ActionsConfig actions,
+                       Map<String, Map<String, String>> settingsProfiles) {
+        this.baseLibs = Collections.unmodifiableList(baseLibs);
+        this.settings = Collections.unmodifiableMap(settings);
+        this.services = services;
+        this.actions = actions;
+
+        final LinkedHashMap<String, Map<String, String>> profiles = new LinkedHashMap<>();
+        for (final Map.Entry<String, Map<String, String>> profile : settingsProfiles.entrySet()) {
+            profiles.put(profile.getKey(), Collections.unmodifiableMap(profile.getValue()));
+        }
+        this.settingsProfiles = Collections.unmodifiableMap(profiles);
+
+        for (final ServiceConfig service : services.getServices()) {
+            for (final ModuleConfig module : service.getModules()) {
+                if (module.getProfile() != null && !this.settingsProfiles.containsKey(module.getProfile()))
+                    throw new IllegalStateException("Unknown settings profile '" + module.getProfile()
+                            + "' of module '" + service.getName() + "/" + module.getName() + "'");
+            }
+        }
+    }
+
+    public List<BaseLibConfig> getBaseLibs() {
+        return baseLibs;
+    }
+
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    public ServicesConfig getServices() {
+        return services;
+    }
+
+    public ActionsConfig getActions() {
+        return actions;
+    }
+
+    /**
+     * @return shared immutable settings by profile id
+     */
+    public Map<String, Map<String, String>> getSettingsProfiles() {
+        return settingsProfiles;
+    }
+
+    /**
+     * @return settings of the module layered over its profile without copying,
+     * null if the module has neither a profile nor own settings
+     */
+    @Nullable
+    public Map<String, String> getModuleSettings(ModuleConfig module) {
+        final Map<String, String> profile = module.getProfile() == null ?
+                null :
+                settingsProfiles.get(module.getProfile());
+        if (profile == null) return module.getSettings();
+        if (module.getSettings() == null || module.getSettings().isEmpty()) return profile;
+        return new LayeredSettings(profile, module.getSettings());
+    }
+}
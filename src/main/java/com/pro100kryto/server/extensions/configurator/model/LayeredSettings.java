@@ -0,0 +1,95 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only settings of a module: own settings layered over a shared settings profile.
+ * Nothing is copied, the profile map is shared by all modules referencing it.
+ */
+public final class LayeredSettings extends AbstractMap<String, String> {
+    private final Map<String, String> base;
+    private final Map<String, String> overrides;
+    private int size = -1;
+
+    public LayeredSettings(Map<String, String> base, Map<String, String> overrides) {
+        this.base = base;
+        this.overrides = overrides;
+    }
+
+    @Override
+    public String get(Object key) {
+        final String value = overrides.get(key);
+        return value != null ? value : base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return overrides.containsKey(key) || base.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            int count = overrides.size();
+            for (final String key : base.keySet()) {
+                if (!overrides.containsKey(key)) count++;
+            }
+            size = count;
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new LayeredIterator();
+            }
+
+            @Override
+            public int size() {
+                return LayeredSettings.this.size();
+            }
+        };
+    }
+
+    /**
+     * Entries of the overrides, then entries of the base which are not overridden.
+     */
+    private final class LayeredIterator implements Iterator<Entry<String, String>> {
+        private final Iterator<Entry<String, String>> overridesIterator = overrides.entrySet().iterator();
+        private final Iterator<Entry<String, String>> baseIterator = base.entrySet().iterator();
+        private Entry<String, String> next = null;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) return true;
+            if (overridesIterator.hasNext()) {
+                next = overridesIterator.next();
+                return true;
+            }
+            while (baseIterator.hasNext()) {
+                final Entry<String, String> entry = baseIterator.next();
+                if (!overrides.containsKey(entry.getKey())) {
+                    next = entry;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Entry<String, String> entry = next;
+            next = null;
+            return new SimpleImmutableEntry<>(entry);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public final class ModuleConfig {
+    private final String name;
+    private final String type;
+    private final long delay;
+    @Nullable
+    private final String profile;
+    @Nullable
+    private final Map<String, String> settings;
+    private final List<String> dependsOn;
+    private final boolean lazy;
+
+    public ModuleConfig(String name, String type, long delay, @Nullable String profile,
+                        @Nullable Map<String, String> settings, List<String> dependsOn, boolean lazy) {
+        this.name = name;
+        this.type = type;
+        this.delay = delay;
+        this.profile = profile;
+        this.settings = settings == null ? null : Collections.unmodifiableMap(settings);
+        this.dependsOn = Collections.unmodifiableList(dependsOn);
+        this.lazy = lazy;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * @return id of the referenced &lt;settingsProfile&gt; or null
+     */
+    @Nullable
+    public String getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return own module settings (overriding the profile) or null if the module has no &lt;settings&gt; element
+     * @see ConfigModel#getModuleSettings(ModuleConfig)
+     */
+    @Nullable
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return names of modules of the same service or "serviceName/moduleName" of other services
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+
+    /**
+     * @return true if the module is created on its first start action instead of during the configuration,
+     * set by "lazy" of the module or else of its service
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+}
@@ -0,0 +1,74 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public final class ServiceConfig {
+    private final String name;
+    private final String type;
+    private final long delay;
+    @Nullable
+    private final String onLoad;
+    private final List<BaseLibConfig> baseLibs;
+    private final Map<String, String> settings;
+    private final long modulesDelay;
+    private final List<ModuleConfig> modules;
+    private final List<String> dependsOn;
+
+    public ServiceConfig(String name, String type, long delay, @Nullable String onLoad,
+                         List<BaseLibConfig> baseLibs, Map<String, String> settings,
+                         long modulesDelay, List<ModuleConfig> modules, List<String> dependsOn) {
+        this.name = name;
+        this.type = type;
+        this.delay = delay;
+        this.onLoad = onLoad;
+        this.baseLibs = Collections.unmodifiableList(baseLibs);
+        this.settings = Collections.unmodifiableMap(settings);
+        this.modulesDelay = modulesDelay;
+        this.modules = Collections.unmodifiableList(modules);
+        this.dependsOn = Collections.unmodifiableList(dependsOn);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    @Nullable
+    public String getOnLoad() {
+        return onLoad;
+    }
+
+    public List<BaseLibConfig> getBaseLibs() {
+        return baseLibs;
+    }
+
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    public long getModulesDelay() {
+        return modulesDelay;
+    }
+
+    public List<ModuleConfig> getModules() {
+        return modules;
+    }
+
+    /**
+     * @return names of services which must be fully configured before this one
+     */
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+}
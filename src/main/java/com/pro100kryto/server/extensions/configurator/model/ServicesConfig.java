@@ -0,0 +1,60 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class ServicesConfig {
+    public static final ServicesConfig EMPTY = new ServicesConfig(
+            0, null, Collections.<BaseLibConfig>emptyList(), Collections.<ServiceConfig>emptyList(), false, 0);
+
+    private final long delay;
+    @Nullable
+    private final String onLoad;
+    private final List<BaseLibConfig> baseLibs;
+    private final List<ServiceConfig> services;
+    private final boolean parallel;
+    private final int threads;
+
+    public ServicesConfig(long delay, @Nullable String onLoad, List<BaseLibConfig> baseLibs,
+                          List<ServiceConfig> services, boolean parallel, int threads) {
+        this.delay = delay;
+        this.onLoad = onLoad;
+        this.baseLibs = Collections.unmodifiableList(baseLibs);
+        this.services = Collections.unmodifiableList(services);
+        this.parallel = parallel;
+        this.threads = threads;
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    @Nullable
+    public String getOnLoad() {
+        return onLoad;
+    }
+
+    public List<BaseLibConfig> getBaseLibs() {
+        return baseLibs;
+    }
+
+    public List<ServiceConfig> getServices() {
+        return services;
+    }
+
+    /**
+     * @return true if services and modules are created concurrently following "dependsOn"
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @return bootstrap threads count, 0 - count of available processors
+     */
+    public int getThreads() {
+        return threads;
+    }
+}
@@ -0,0 +1,116 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ActionFlightsTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String CONFIG = "<server><services><service name='a' type='T'/></services><actions>"
+            + "<action id='slow' delay='300'><service serviceName='a' method='start'/></action>"
+            + "<action id='stop'><service serviceName='a' method='stop'/></action>"
+            + "<action id='bad' delay='100'><action id='missing'/><service serviceName='x' method='start'/></action>"
+            + "</actions></server>";
+
+    private final TestServer server = new TestServer();
+
+    @Test
+    void concurrentRequestsShareOneExecution() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        final CompletableFuture<Void> first = configurator.execAction("slow");
+        final CompletableFuture<Void> second = configurator.execAction("slow");
+        CompletableFuture.allOf(first, second).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, TestServer.count(configurator.getMetrics(), "action:slow"));
+        assertEquals(1, TestServer.count(configurator.getMetrics(), "phase:actionCoalesced"));
+        assertEquals(1, Collections.frequency(server.getCalls(), "start a"));
+    }
+
+    @Test
+    void withoutWindowTheNextRequestExecutesAgain() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.execAction("stop").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, TestServer.count(configurator.getMetrics(), "action:slow"));
+        assertEquals(2, Collections.frequency(server.getCalls(), "start a"));
+    }
+
+    @Test
+    void resultWindowReturnsTheRecentResult() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        configurator.setActionResultWindow(1_000);
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.execAction("stop").get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        // within the window even though "stop" changed the target since
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, TestServer.count(configurator.getMetrics(), "action:slow"));
+        assertEquals(1, TestServer.count(configurator.getMetrics(), "phase:actionRecent"));
+
+        Thread.sleep(1_200);
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(2, TestServer.count(configurator.getMetrics(), "action:slow"));
+    }
+
+    @Test
+    void failedExecutionIsNotRemembered() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        configurator.setActionResultWindow(10_000);
+
+        assertThrows(ExecutionException.class, () -> configurator.execAction("bad").get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertThrows(ExecutionException.class, () -> configurator.execAction("bad").get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(2, TestServer.count(configurator.getMetrics(), "action:bad"));
+    }
+
+    @Test
+    void executionIsCancelledOnlyWhenAllRequestsAre() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        final CompletableFuture<Void> first = configurator.execAction("slow");
+        final CompletableFuture<Void> second = configurator.execAction("slow");
+
+        first.cancel(false);
+        second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, Collections.frequency(server.getCalls(), "start a"));
+
+        configurator.execAction("stop").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        final CompletableFuture<Void> third = configurator.execAction("slow");
+        final CompletableFuture<Void> fourth = configurator.execAction("slow");
+        third.cancel(false);
+        fourth.cancel(false);
+        Thread.sleep(500);
+        assertEquals(1, Collections.frequency(server.getCalls(), "start a"));
+
+        // a cancelled execution is not shared with later requests
+        final CompletableFuture<Void> fifth = configurator.execAction("slow");
+        fifth.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertFalse(fifth.isCompletedExceptionally());
+        assertEquals(2, Collections.frequency(server.getCalls(), "start a"));
+    }
+
+    @Test
+    void reloadedConfigurationIsNotShared() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        configurator.setActionResultWindow(10_000);
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.reloadConfiguration();
+        configurator.execAction("slow").get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, TestServer.count(configurator.getMetrics(), "action:slow"));
+        assertEquals(0, TestServer.count(configurator.getMetrics(), "phase:actionRecent"));
+    }
+
+    private XmlConfigurator configurator() throws Exception {
+        final XmlConfigurator configurator = server.configurator(CONFIG);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        return configurator;
+    }
+}
@@ -0,0 +1,134 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActionPlanCompilerTest {
+
+    @Test
+    void linksNestedActionsAndComputesDepth() throws Exception {
+        final ActionIndex index = compile("<actions delay='5'>"
+                + "<action id='all' delay='10'><action id='a' delay='20'/><service serviceName='s' method='stop'/></action>"
+                + "<action id='a'><action id='b'/><module serviceName='s' moduleName='m' method='start' force='true'/></action>"
+                + "<action id='b'><service serviceName='s' method='start'/></action>"
+                + "</actions>");
+
+        assertEquals(5, index.getActionsDelay());
+        final ActionPlan all = index.get("all");
+        assertNotNull(all);
+        assertNull(all.getError());
+        assertEquals(10, all.getDelay());
+        assertEquals(3, all.getDepth());
+        assertEquals(2, index.get("a").getDepth());
+        assertEquals(1, index.get("b").getDepth());
+
+        final ActionStep nested = all.getSteps().get(0);
+        assertEquals(ActionStep.Kind.ACTION, nested.getKind());
+        assertEquals(20, nested.getDelay());
+        assertSame(index.get("a"), nested.getPlan());
+
+        final ActionStep stop = all.getSteps().get(1);
+        assertEquals(ActionStep.Kind.SERVICE, stop.getKind());
+        assertEquals(ActionStep.Method.STOP, stop.getMethod());
+        assertEquals("s", stop.getServiceName());
+
+        final ActionStep module = index.get("a").getSteps().get(1);
+        assertEquals(ActionStep.Kind.MODULE, module.getKind());
+        assertEquals("m", module.getModuleName());
+        assertTrue(module.isForce());
+    }
+
+    @Test
+    void cyclesHaveUnboundedDepth() throws Exception {
+        final ActionIndex index = compile("<actions>"
+                + "<action id='a'><action id='b'/></action>"
+                + "<action id='b'><action id='a'/></action>"
+                + "<action id='self'><action id='self'/></action>"
+                + "<action id='c'><service serviceName='s' method='start'/></action>"
+                + "</actions>");
+
+        assertEquals(ActionPlan.UNBOUNDED_DEPTH, index.get("a").getDepth());
+        assertEquals(ActionPlan.UNBOUNDED_DEPTH, index.get("b").getDepth());
+        assertEquals(ActionPlan.UNBOUNDED_DEPTH, index.get("self").getDepth());
+        assertEquals(1, index.get("c").getDepth());
+        assertNull(index.get("a").getError());
+    }
+
+    @Test
+    void unknownNestedActionIsLinkedOnExecution() throws Exception {
+        final ActionPlan plan = compile("<actions><action id='a'><action id='missing'/></action></actions>").get("a");
+
+        assertNull(plan.getError());
+        assertEquals("missing", plan.getSteps().get(0).getActionId());
+        assertNull(plan.getSteps().get(0).getPlan());
+        assertEquals(2, plan.getDepth());
+    }
+
+    @Test
+    void invalidNestedActionMakesParentsInvalid() throws Exception {
+        final ActionIndex index = compile("<actions>"
+                + "<action id='top'><action id='middle'/></action>"
+                + "<action id='middle'><action id='bad'/></action>"
+                + "<action id='bad'><service serviceName='s' method='restart'/></action>"
+                + "<action id='tag'><unknown/></action>"
+                + "</actions>");
+
+        final RuntimeException error = index.get("bad").getError();
+        assertNotNull(error);
+        assertTrue(error.getMessage().contains("restart"));
+        assertSame(error, index.get("middle").getError());
+        assertSame(error, index.get("top").getError());
+        assertTrue(index.get("tag").getError().getMessage().contains("unknown"));
+    }
+
+    @Test
+    void firstDeclarationWins() throws Exception {
+        final ActionIndex index = compile("<actions>"
+                + "<action id='a' delay='1'><service serviceName='s' method='start'/></action>"
+                + "<action id='a' delay='2'><service serviceName='s' method='stop'/></action>"
+                + "</actions>");
+
+        assertEquals(1, index.getPlans().size());
+        assertEquals(1, index.get("a").getDelay());
+        assertEquals(ActionStep.Method.START, index.get("a").getSteps().get(0).getMethod());
+    }
+
+    @Test
+    void invalidOrTooDeepActionExecutesNothing() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = server.configurator("<server>"
+                + "<services><service name='s' type='T'/></services>"
+                + "<actions>"
+                + "<action id='top'><service serviceName='s' method='start'/><action id='bad'/></action>"
+                + "<action id='bad'><service serviceName='s' method='restart'/></action>"
+                + "<action id='loop'><service serviceName='s' method='start'/><action id='loop'/></action>"
+                + "<action id='ok'><service serviceName='s' method='start'/></action>"
+                + "</actions></server>");
+        configurator.execConfigurationAsync().get(5, TimeUnit.SECONDS);
+
+        final ExecutionException invalid = assertThrows(ExecutionException.class,
+                () -> configurator.execAction("top").get(5, TimeUnit.SECONDS));
+        assertTrue(invalid.getCause().getMessage().contains("restart"));
+        final ExecutionException loop = assertThrows(ExecutionException.class,
+                () -> configurator.execAction("loop").get(5, TimeUnit.SECONDS));
+        assertTrue(loop.getCause().getMessage().contains("recursions"));
+        assertEquals(Arrays.asList("create s"), server.getCalls());
+
+        configurator.execAction("ok").get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("create s", "start s"), server.getCalls());
+    }
+
+    private static ActionIndex compile(String actions) throws Exception {
+        return ActionPlanCompiler.compile(TestServer.model("<server>" + actions + "</server>").getActions());
+    }
+}
@@ -0,0 +1,87 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncEngineTest {
+    private final AsyncEngine engine = new AsyncEngine("Test", new ConfiguratorMetrics());
+
+    @AfterEach
+    void close() {
+        engine.close();
+    }
+
+    @Test
+    void delayCompletesAfterItsTime() throws Exception {
+        final long startNanos = System.nanoTime();
+        engine.delay(100, new CompletableFuture<>()).get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void cancelledTokenFailsDelayAtOnce() throws Exception {
+        final CompletableFuture<Void> token = new CompletableFuture<>();
+        final CompletableFuture<Void> delay = engine.delay(60_000, token);
+        assertFalse(delay.isDone());
+
+        token.cancel(false);
+        assertThrows(CancellationException.class, () -> delay.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void finishedTokenFailsDelay() {
+        final CompletableFuture<Void> token = CompletableFuture.completedFuture(null);
+        assertTrue(engine.delay(60_000, token).isCompletedExceptionally());
+        assertTrue(engine.delay(0, token).isCompletedExceptionally());
+        assertTrue(engine.delay(0, new CompletableFuture<>()).isDone());
+    }
+
+    @Test
+    void runIsNotStartedForFinishedToken() {
+        final boolean[] ran = {false};
+        final CompletableFuture<Void> run = engine.run(() -> ran[0] = true, engine.getWorkers(),
+                CompletableFuture.completedFuture(null));
+        assertThrows(ExecutionException.class, () -> run.get(1, TimeUnit.SECONDS));
+        assertFalse(ran[0]);
+    }
+
+    @Test
+    void withTimeoutFailsWithoutCancellingTheSource() throws Exception {
+        final CompletableFuture<String> source = new CompletableFuture<>();
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> engine.withTimeout(source, 50).get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        assertFalse(source.isDone());
+
+        source.complete("done");
+        assertEquals("done", engine.withTimeout(source, 50).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void worksAgainAfterClose() throws Exception {
+        engine.delay(10, new CompletableFuture<>()).get(5, TimeUnit.SECONDS);
+        engine.close();
+
+        engine.delay(10, new CompletableFuture<>()).get(5, TimeUnit.SECONDS);
+        assertEquals("ok", engine.supply(() -> "ok", engine.getWorkers(), new CompletableFuture<>())
+                .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void closeCompletesScheduledDelays() throws Exception {
+        final CompletableFuture<Void> delay = engine.delay(100, new CompletableFuture<>());
+        engine.close();
+        delay.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,128 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigDiffTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String BASE = "<server>"
+            + "<settings><setting key='k' val='1'/></settings>"
+            + "<services>"
+            + "<service name='a' type='T'><settings><setting key='s' val='1'/></settings>"
+            + "<modules><module name='m' type='M'><settings><setting key='x' val='1'/></settings></module></modules>"
+            + "</service>"
+            + "<service name='b' type='T'/>"
+            + "</services></server>";
+    private static final String CHANGED = "<server>"
+            + "<settings><setting key='k' val='2'/></settings>"
+            + "<services>"
+            + "<service name='a' type='T'><settings><setting key='s' val='2'/></settings>"
+            + "<modules><module name='m' type='M'><settings><setting key='x' val='2'/></settings></module>"
+            + "<module name='n' type='M'/></modules>"
+            + "</service>"
+            + "<service name='b' type='T'/>"
+            + "<service name='c' type='T'/>"
+            + "</services></server>";
+
+    private final TestServer server = new TestServer();
+
+    @Test
+    void computesAddedAndChangedTargets() throws Exception {
+        final ConfigDiff diff = ConfigDiff.compute(TestServer.model(BASE), TestServer.model(CHANGED));
+
+        assertEquals(Collections.singletonMap("k", "2"), diff.getServerSettings());
+        assertEquals(1, diff.getAddedServices().size());
+        assertEquals("c", diff.getAddedServices().get(0).getName());
+
+        assertEquals(1, diff.getChangedServices().size());
+        final ConfigDiff.ServiceDelta delta = diff.getChangedServices().get(0);
+        assertEquals("a", delta.getServiceConfig().getName());
+        assertEquals(Collections.singletonMap("s", "2"), delta.getSettings());
+        assertEquals("n", delta.getAddedModules().get(0).getName());
+        assertEquals("m", delta.getChangedModules().get(0).getName());
+        assertTrue(diff.getNotApplicable().isEmpty());
+    }
+
+    @Test
+    void reportsChangesWhichNeedRestart() throws Exception {
+        final ConfigDiff diff = ConfigDiff.compute(TestServer.model(CHANGED), TestServer.model(BASE
+                .replace("<service name='b' type='T'/>", "<service name='b' type='Other'/>")
+                .replace("<setting key='k' val='1'/>", "")));
+
+        final List<String> notApplicable = diff.getNotApplicable();
+        assertTrue(notApplicable.contains("service \"b\": type changed"), notApplicable.toString());
+        assertTrue(notApplicable.contains("service \"c\": removed"), notApplicable.toString());
+        assertTrue(notApplicable.contains("module \"a/n\": removed"), notApplicable.toString());
+        assertTrue(notApplicable.contains("server: setting \"k\" removed"), notApplicable.toString());
+    }
+
+    @Test
+    void equalModelsHaveEmptyDiff() throws Exception {
+        assertTrue(ConfigDiff.compute(TestServer.model(BASE), TestServer.model(BASE)).isEmpty());
+    }
+
+    @Test
+    void appliesOnlyTheDifference() throws Exception {
+        final File file = TestServer.configFile(BASE);
+        final XmlConfigurator configurator = server.configurator(file);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        final int applied = server.getCalls().size();
+
+        TestServer.write(file, CHANGED);
+        configurator.applyChanges().get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final List<String> calls = server.getCalls();
+        assertEquals(Arrays.asList(
+                "setting server k=2",
+                "setting a s=2",
+                "settings a/m {x=2}",
+                "create a/n",
+                "create c"
+        ), calls.subList(applied, calls.size()));
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("a/m"));
+
+        // nothing changed anymore
+        configurator.applyChanges().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(calls, server.getCalls());
+    }
+
+    @Test
+    void hotReloadAppliesWrittenFile() throws Exception {
+        final File file = TestServer.configFile(BASE);
+        final XmlConfigurator configurator = server.configurator(file);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.startHotReload(50);
+        try {
+            TestServer.write(file, CHANGED);
+            final long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (server.getCreated("c") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, server.getCreated("c"));
+            assertEquals(1, server.getCreated("a"));
+        } finally {
+            configurator.stopHotReload();
+        }
+    }
+
+    @Test
+    void applyChangesNeedsAppliedConfiguration() throws Exception {
+        final XmlConfigurator configurator = server.configurator(BASE);
+
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.applyChanges().get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(exception.getCause().getMessage().contains("not applied"));
+        assertTrue(server.getCalls().isEmpty());
+    }
+}
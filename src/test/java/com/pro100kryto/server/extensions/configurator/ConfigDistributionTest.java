@@ -0,0 +1,406 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Source and subscribers on the loopback interface of this JVM.
+ */
+class ConfigDistributionTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String AB = "<server><services>"
+            + "<service name='a' type='T'><modules><module name='m' type='M'/></modules></service>"
+            + "<service name='b' type='T'/>"
+            + "</services></server>";
+    private static final String ABC = AB.replace("</services>", "<service name='c' type='T'/></services>");
+    private static final String SECRET = "configurator test key";
+    private static final DistributionKey KEY = new DistributionKey(SECRET.getBytes(StandardCharsets.UTF_8));
+    private static final DistributionKey OTHER_KEY = new DistributionKey(
+            "another configurator key".getBytes(StandardCharsets.UTF_8));
+
+    private final List<Closeable> closeables = new ArrayList<>();
+    private final BlockingQueue<ConfigModel> received = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    void close() throws IOException {
+        for (final Closeable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void sendsSnapshotThenDeltas() throws Exception {
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB));
+        final ConfigSubscription subscription = subscription(source.getPort());
+
+        assertEquals(Arrays.asList("a", "b"), serviceNames(next()));
+
+        source.publish(TestServer.model(ABC));
+        assertEquals(Arrays.asList("a", "b", "c"), serviceNames(next()));
+        assertEquals(2, subscription.getRevision());
+
+        // an equal model is not sent
+        source.publish(TestServer.model(ABC));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, source.getRevision());
+    }
+
+    @Test
+    void servesSeveralSubscribers() throws Exception {
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB));
+        subscription(source.getPort());
+        subscription(source.getPort());
+
+        next();
+        next();
+        source.publish(TestServer.model(ABC));
+        assertEquals(Arrays.asList("a", "b", "c"), serviceNames(next()));
+        assertEquals(Arrays.asList("a", "b", "c"), serviceNames(next()));
+    }
+
+    @Test
+    void reconnectsToRestartedSource() throws Exception {
+        final ConfigSource source = source(0);
+        final int port = source.getPort();
+        source.publish(TestServer.model(AB));
+        final ConfigSubscription subscription = subscription(port);
+        next();
+
+        source.close();
+        final ConfigSource restarted = restartSource(port);
+        restarted.publish(TestServer.model(ABC));
+
+        assertEquals(Arrays.asList("a", "b", "c"), serviceNames(next()));
+        assertTrue(subscription.isConnected());
+    }
+
+    @Test
+    void reconnectsAfterBrokenFrame() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        final int port = serverSocket.getLocalPort();
+        subscription(port);
+
+        try (Socket socket = serverSocket.accept()) {
+            final FakeSource fake = new FakeSource(socket);
+            // full frame with a changed part claiming 2^31-1 bytes
+            final byte[] frame = {0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 1, 1,
+                    1, 0, 1, 'k', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+            fake.send(frame, fake.session.sign(frame, frame.length));
+            // the subscription drops the connection
+            assertEquals(-1, fake.in.read());
+        }
+        serverSocket.close();
+
+        final ConfigSource source = restartSource(port);
+        source.publish(TestServer.model(AB));
+        assertEquals(Arrays.asList("a", "b"), serviceNames(next()));
+    }
+
+    @Test
+    void subscriberExecutesThenAppliesChanges() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = configurator(server);
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB));
+
+        configurator.subscribe(source.getPort(), keyFile()).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("a/m"));
+
+        source.publish(TestServer.model(ABC));
+        awaitCreated(server, "c");
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("b"));
+        assertEquals(1, server.getCreated("a/m"));
+    }
+
+    @Test
+    void frameDuringBootstrapWaitsForIt() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = configurator(server);
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB));
+
+        final CountDownLatch blocked = server.block();
+        final CompletableFuture<Void> subscribed = configurator.subscribe(source.getPort(), keyFile());
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        // received while the first configuration is executed
+        source.publish(TestServer.model(ABC));
+        Thread.sleep(200);
+        server.release();
+
+        subscribed.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        awaitCreated(server, "c");
+        Thread.sleep(200);
+        for (final String name : server.getCreatedNames()) {
+            assertEquals(1, server.getCreated(name), name);
+        }
+    }
+
+    @Test
+    void failedBootstrapIsExecutedAgain() throws Exception {
+        final TestServer server = new TestServer();
+        server.failType("Broken");
+        final XmlConfigurator configurator = configurator(server);
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model("<server><services><service name='x' type='Broken'/></services></server>"));
+
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.subscribe(source.getPort(), keyFile()).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNotNull(exception.getCause());
+
+        source.publish(TestServer.model(AB));
+        awaitCreated(server, "b");
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("a/m"));
+    }
+
+    @Test
+    void partiallyFailedBootstrapReusesCreatedTargets() throws Exception {
+        final TestServer server = new TestServer();
+        server.failType("Broken");
+        final XmlConfigurator configurator = configurator(server);
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB.replace("<service name='b' type='T'/>",
+                "<service name='x' type='Broken'/>")));
+
+        assertThrows(ExecutionException.class,
+                () -> configurator.subscribe(source.getPort(), keyFile()).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("a/m"));
+
+        source.publish(TestServer.model(AB.replace("<service name='a' type='T'>",
+                "<service name='a' type='T'><settings><setting key='k' val='v'/></settings>")));
+        awaitCreated(server, "b");
+        assertEquals(1, server.getCreated("a"));
+        assertEquals(1, server.getCreated("a/m"));
+        assertTrue(server.getCalls().contains("setting a k=v"));
+    }
+
+    @Test
+    void subscriberWithAnotherKeyIsRejected() throws Exception {
+        final ConfigSource source = source(0);
+        source.publish(TestServer.model(AB));
+        subscription(source.getPort(), OTHER_KEY);
+
+        // the subscription keeps reconnecting and is rejected every time
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void sourceWithAnotherKeyIsNotApplied() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = configurator(server);
+        final ConfigSource source = new ConfigSource(0, OTHER_KEY, TestServer.logger());
+        closeables.add(source);
+        source.publish(TestServer.model(AB));
+
+        final CompletableFuture<Void> subscribed = configurator.subscribe(source.getPort(), keyFile());
+        Thread.sleep(300);
+        assertFalse(subscribed.isDone());
+        assertEquals(0, server.getCreated("a"));
+    }
+
+    @Test
+    void forgedFrameIsNotApplied() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        subscription(serverSocket.getLocalPort());
+
+        try (Socket socket = serverSocket.accept()) {
+            final FakeSource fake = new FakeSource(socket);
+            final ModelParts parts = ModelParts.split(TestServer.model(AB));
+            final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            final DataOutputStream frameOut = new DataOutputStream(frame);
+            frameOut.writeLong(1);
+            frameOut.writeLong(1);
+            frameOut.writeBoolean(true);
+            parts.writeDelta(frameOut, null);
+            frameOut.flush();
+            final byte[] bytes = frame.toByteArray();
+
+            // signed with another key
+            fake.send(bytes, OTHER_KEY.session(new byte[DistributionKey.NONCE_LENGTH],
+                    new byte[DistributionKey.NONCE_LENGTH]).sign(bytes, bytes.length));
+            assertEquals(-1, fake.in.read());
+        }
+        serverSocket.close();
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void oversizedFrameIsDropped() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        subscription(serverSocket.getLocalPort());
+
+        try (Socket socket = serverSocket.accept()) {
+            final FakeSource fake = new FakeSource(socket);
+            fake.out.writeInt(ConfigSource.MAX_FRAME + 1);
+            fake.out.flush();
+            assertEquals(-1, fake.in.read());
+        }
+        serverSocket.close();
+    }
+
+    @Test
+    void keyFileAccessibleByOthersIsRefused() throws Exception {
+        final File keyFile = keyFile();
+        if (Files.getFileAttributeView(keyFile.toPath(), PosixFileAttributeView.class) == null) return;
+        Files.setPosixFilePermissions(keyFile.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+
+        final XmlConfigurator configurator = configurator(new TestServer());
+        assertThrows(IOException.class, () -> configurator.startDistribution(0, keyFile));
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.subscribe(0, keyFile).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(exception.getCause() instanceof IOException);
+    }
+
+    // --------------
+
+    /**
+     * Source side of the handshake, sends frames the real source never sends.
+     */
+    private static final class FakeSource {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final DistributionKey.Session session;
+
+        private FakeSource(Socket socket) throws IOException {
+            in = new DataInputStream(socket.getInputStream());
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final byte[] sourceNonce = DistributionKey.nonce();
+            final byte[] subscriberNonce = new byte[DistributionKey.NONCE_LENGTH];
+            out.writeInt(ConfigSource.MAGIC);
+            out.writeInt(ConfigModelCodec.VERSION);
+            out.write(sourceNonce);
+            out.flush();
+            in.readInt();
+            in.readInt();
+            in.readFully(subscriberNonce);
+            in.readFully(new byte[DistributionKey.MAC_LENGTH]);
+            out.write(KEY.proof("source", sourceNonce, subscriberNonce));
+            out.flush();
+            in.readLong();
+            in.readLong();
+            session = KEY.session(sourceNonce, subscriberNonce);
+        }
+
+        private void send(byte[] frame, byte[] signature) throws IOException {
+            out.writeInt(frame.length);
+            out.write(frame);
+            out.write(signature);
+            out.flush();
+        }
+    }
+
+    private ConfigSource source(int port) throws IOException {
+        final ConfigSource source = new ConfigSource(port, KEY, TestServer.logger());
+        closeables.add(source);
+        return source;
+    }
+
+    /**
+     * The port may be held for a moment by the subscription trying to reconnect.
+     */
+    private ConfigSource restartSource(int port) throws Exception {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            try {
+                return source(port);
+            } catch (BindException bindException) {
+                if (System.currentTimeMillis() > deadline) throw bindException;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private ConfigSubscription subscription(int port) {
+        return subscription(port, KEY);
+    }
+
+    private ConfigSubscription subscription(int port, DistributionKey key) {
+        final ConfigSubscription subscription = new ConfigSubscription(port, key, received::add, TestServer.logger());
+        closeables.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Files.createTempFile makes the file accessible by its owner only.
+     */
+    private File keyFile() throws IOException {
+        final File file = Files.createTempFile("configurator", ".key").toFile();
+        closeables.add(file::delete);
+        Files.write(file.toPath(), (SECRET + "\n").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private XmlConfigurator configurator(TestServer server) {
+        final XmlConfigurator configurator = new XmlConfigurator(server.serverControl(), 15, TestServer.logger());
+        closeables.add(configurator::stopDistribution);
+        return configurator;
+    }
+
+    private ConfigModel next() throws InterruptedException {
+        final ConfigModel model = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(model);
+        return model;
+    }
+
+    private static void awaitCreated(TestServer server, String name) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (server.getCreated(name) == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "'" + name + "' is not created");
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> serviceNames(ConfigModel model) {
+        final ArrayList<String> names = new ArrayList<>();
+        for (final ServiceConfig service : model.getServices().getServices()) {
+            names.add(service.getName());
+        }
+        return names;
+    }
+}
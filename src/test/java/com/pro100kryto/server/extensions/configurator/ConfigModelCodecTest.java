@@ -0,0 +1,147 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigModelCodecTest {
+    private static final String CONFIG = "<server>"
+            + "<baseLibs><baseLib path='libs' recursive='true'/></baseLibs>"
+            + "<settings><setting key='k' val='v'/></settings>"
+            + "<settingsProfile id='p'><setting key='pk' val='pv'/></settingsProfile>"
+            + "<services delay='5' onLoad='x' parallel='true' threads='4'>"
+            + "  <service name='a' type='T' dependsOn='b'>"
+            + "    <settings><setting key='k' val='v'/></settings>"
+            + "    <modules delay='1'><module name='m' type='M' profile='p' lazy='true'>"
+            + "      <settings><setting key='mk' val='mv'/></settings>"
+            + "    </module></modules>"
+            + "  </service>"
+            + "  <service name='b' type='T'/>"
+            + "</services>"
+            + "<actions delay='2'><action id='go'><service method='start' serviceName='a' force='true'/>"
+            + "</action></actions>"
+            + "</server>";
+
+    @Test
+    void roundTrip() throws Exception {
+        final byte[] bytes = encode(TestServer.model(CONFIG));
+        final ConfigModel model = decode(bytes);
+
+        assertArrayEquals(bytes, encode(model));
+        assertEquals("a", model.getServices().getServices().get(0).getName());
+        assertEquals("pv", model.getModuleSettings(
+                model.getServices().getServices().get(0).getModules().get(0)).get("pk"));
+        assertTrue(model.getActions().getActions().get(0).getElements().get(0).isForce());
+    }
+
+    @Test
+    void partsRoundTrip() throws Exception {
+        final ConfigModel model = TestServer.model(CONFIG);
+        final ModelParts parts = ModelParts.split(model);
+
+        assertArrayEquals(encode(model), encode(parts.join()));
+        assertTrue(parts.sameAs(ModelParts.split(parts.join())));
+        assertArrayEquals(encode(model), encode(applyDelta(ModelParts.EMPTY, parts, null).join()));
+    }
+
+    @Test
+    void deltaHasOnlyChangedParts() throws Exception {
+        final ModelParts base = ModelParts.split(TestServer.model(CONFIG));
+        final ModelParts changed = ModelParts.split(TestServer.model(CONFIG.replace(
+                "<service name='b' type='T'/>", "<service name='b' type='T2'/>")));
+        assertFalse(base.sameAs(changed));
+
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        assertEquals(1, changed.writeDelta(new DataOutputStream(delta), base));
+        assertEquals(0, base.writeDelta(new DataOutputStream(new ByteArrayOutputStream()), base));
+
+        final ModelParts applied = applyDelta(base, changed, base);
+        assertTrue(applied.sameAs(changed));
+        assertEquals("T2", applied.join().getServices().getServices().get(1).getType());
+    }
+
+    @Test
+    void deltaRemovesAndReordersParts() throws Exception {
+        final ModelParts base = ModelParts.split(TestServer.model(
+                "<server><services><service name='a' type='T'/><service name='b' type='T'/>"
+                        + "<service name='c' type='T'/></services></server>"));
+        final ModelParts changed = ModelParts.split(TestServer.model(
+                "<server><services><service name='c' type='T'/><service name='a' type='T'/></services></server>"));
+
+        final ModelParts applied = applyDelta(base, changed, base);
+        assertTrue(applied.sameAs(changed));
+        assertEquals("c", applied.join().getServices().getServices().get(0).getName());
+        assertEquals(2, applied.join().getServices().getServices().size());
+    }
+
+    @Test
+    void rejectsCountsLargerThanInput() {
+        // count of baseLibs: Integer.MAX_VALUE as a varint
+        final byte[] hugeCount = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IOException.class, () -> decode(hugeCount));
+
+        // a changed part claiming 2^31-1 bytes
+        final byte[] hugePart = {1, 0, 1, 'k', (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IOException.class, () -> ModelParts.EMPTY.readDelta(
+                new DataInputStream(new ByteArrayInputStream(hugePart)), hugePart.length));
+
+        // a count beyond int
+        final byte[] brokenSize = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+        assertThrows(IOException.class, () -> decode(brokenSize));
+    }
+
+    @Test
+    void rejectsTruncatedInput() throws Exception {
+        final byte[] bytes = encode(TestServer.model(CONFIG));
+        for (int length = 0; length < bytes.length; length++) {
+            final byte[] truncated = new byte[length];
+            System.arraycopy(bytes, 0, truncated, 0, length);
+            assertThrows(IOException.class, () -> decode(truncated));
+        }
+    }
+
+    @Test
+    void rejectsDeltaOfUnknownPart() throws Exception {
+        final ModelParts base = ModelParts.split(TestServer.model(CONFIG));
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        base.writeDelta(new DataOutputStream(delta), ModelParts.split(TestServer.model(CONFIG.replace(
+                "<service name='b' type='T'/>", "<service name='b' type='T2'/>"))));
+
+        // applied to nothing instead of the base it was written against
+        final byte[] bytes = delta.toByteArray();
+        assertThrows(IOException.class, () -> ModelParts.EMPTY.readDelta(
+                new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length).join());
+    }
+
+    // --------------
+
+    private static ModelParts applyDelta(ModelParts target, ModelParts parts, ModelParts base) throws IOException {
+        final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        parts.writeDelta(new DataOutputStream(delta), base);
+        final byte[] bytes = delta.toByteArray();
+        return target.readDelta(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+
+    private static byte[] encode(ConfigModel model) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        ConfigModelCodec.write(out, model);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static ConfigModel decode(byte[] bytes) throws IOException {
+        return ConfigModelCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length);
+    }
+}
@@ -0,0 +1,115 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigSnapshotTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String CONFIG = "<server><include path='part.xml'/>"
+            + "<services><service name='a' type='T'/></services></server>";
+    private static final String PART = "<server><settings><setting key='k' val='1'/></settings></server>";
+
+    private final Path directory = Files.createTempDirectory("snapshot");
+    private final File config = directory.resolve("config.xml").toFile();
+    private final File part = directory.resolve("part.xml").toFile();
+    private final File snapshotFile = directory.resolve("config.snapshot").toFile();
+
+    ConfigSnapshotTest() throws Exception {
+        config.deleteOnExit();
+        part.deleteOnExit();
+        snapshotFile.deleteOnExit();
+        directory.toFile().deleteOnExit();
+        TestServer.write(config, CONFIG);
+        TestServer.write(part, PART);
+    }
+
+    @Test
+    void matchesUntilAnIncludedFileChanges() throws Exception {
+        final byte[] configHash = hash(config);
+        final Map<String, byte[]> includedHashes = new LinkedHashMap<>();
+        includedHashes.put(part.getPath(), hash(part));
+        ConfigSnapshot.create(configHash, includedHashes, TestServer.model(CONFIG),
+                Collections.<String, LibraryResolver.Resolution>emptyMap()).write(snapshotFile);
+
+        final ConfigSnapshot snapshot = ConfigSnapshot.read(snapshotFile);
+        assertNotNull(snapshot);
+        assertTrue(snapshot.matches(configHash));
+        assertFalse(snapshot.matches(ConfigSnapshot.hash(new byte[]{1})));
+        assertEquals("a", snapshot.getModel().getServices().getServices().get(0).getName());
+
+        TestServer.write(part, PART.replace("val='1'", "val='2'"));
+        assertFalse(snapshot.matches(configHash));
+        assertTrue(part.delete());
+        assertFalse(snapshot.matches(configHash));
+    }
+
+    @Test
+    void unknownFileIsNotRead() throws Exception {
+        assertNull(ConfigSnapshot.read(snapshotFile));
+        Files.write(snapshotFile.toPath(), "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        assertNull(ConfigSnapshot.read(snapshotFile));
+    }
+
+    @Test
+    void configuratorSkipsParsingWhileNothingChanged() throws Exception {
+        final XmlConfigurator first = configurator();
+        assertEquals(1, TestServer.count(first.getMetrics(), "phase:parse"));
+        first.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        awaitSnapshotWritten(first);
+
+        final XmlConfigurator second = configurator();
+        assertEquals(0, TestServer.count(second.getMetrics(), "phase:parse"));
+        assertEquals(1, TestServer.count(second.getMetrics(), "phase:readSnapshot"));
+        assertEquals("1", second.getModel().getSettings().get("k"));
+
+        // an included file changed, the snapshot is invalid and rewritten after the execution
+        TestServer.write(part, PART.replace("val='1'", "val='2'"));
+        final XmlConfigurator third = configurator();
+        assertEquals(1, TestServer.count(third.getMetrics(), "phase:parse"));
+        assertEquals("2", third.getModel().getSettings().get("k"));
+        third.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        awaitSnapshotWritten(third);
+
+        final XmlConfigurator fourth = configurator();
+        assertEquals(0, TestServer.count(fourth.getMetrics(), "phase:parse"));
+        assertEquals("2", fourth.getModel().getSettings().get("k"));
+    }
+
+    private XmlConfigurator configurator() throws Exception {
+        final XmlConfigurator configurator = new XmlConfigurator(new TestServer().serverControl(), 15,
+                TestServer.logger());
+        configurator.setSnapshotFile(snapshotFile);
+        configurator.loadFromFile(config);
+        return configurator;
+    }
+
+    /**
+     * The snapshot is written once the execution completed, not before.
+     */
+    private static void awaitSnapshotWritten(XmlConfigurator configurator) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (TestServer.count(configurator.getMetrics(), "phase:writeSnapshot") == 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, TestServer.count(configurator.getMetrics(), "phase:writeSnapshot"));
+    }
+
+    private static byte[] hash(File file) throws Exception {
+        return ConfigSnapshot.hash(Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfiguratorMetricsTest {
+    private final ConfiguratorMetrics metrics = new ConfiguratorMetrics();
+
+    @Test
+    void reportsCountsAndFailuresSortedByName() {
+        metrics.record(ConfiguratorMetrics.PHASE, "parse", metrics.start());
+        metrics.record(ConfiguratorMetrics.PHASE, "parse", metrics.start(), true);
+        metrics.record(ConfiguratorMetrics.ACTION, "a", metrics.start());
+
+        final List<String> report = metrics.report();
+        assertEquals(2, report.size());
+        assertTrue(report.get(0).startsWith("action:a count=1 total="), report.get(0));
+        assertTrue(report.get(1).startsWith("phase:parse count=2 failed=1 total="), report.get(1));
+
+        metrics.reset();
+        assertTrue(metrics.report().isEmpty());
+    }
+
+    @Test
+    void recordsFutureOnCompletion() {
+        final CompletableFuture<Void> succeeded = new CompletableFuture<>();
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        metrics.record(ConfiguratorMetrics.SERVICE, "s", metrics.start(), succeeded);
+        metrics.record(ConfiguratorMetrics.SERVICE, "s", metrics.start(), failed);
+        assertEquals(0, TestServer.count(metrics, "service:s"));
+
+        succeeded.complete(null);
+        failed.completeExceptionally(new IllegalStateException());
+        assertTrue(metrics.report().get(0).startsWith("service:s count=2 failed=1 "), metrics.report().get(0));
+    }
+
+    @Test
+    void percentilesAreBucketBoundsCappedByMax() {
+        final ConfiguratorMetrics.Histogram histogram = new ConfiguratorMetrics.Histogram();
+        assertEquals(0, histogram.percentile(0.5));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000, false);
+        }
+        histogram.record(1_000_000, false);
+
+        // 1000 is in the bucket [512, 1023]
+        assertEquals(1023, histogram.percentile(0.5));
+        assertEquals(1023, histogram.percentile(0.99));
+        assertEquals(1_000_000, histogram.percentile(1));
+        assertTrue(histogram.toString().startsWith("count=100 total=1.099ms mean=0.011ms p50<=0.001ms"),
+                histogram.toString());
+    }
+
+    @Test
+    void configuratorRecordsPhasesAndTargets() throws Exception {
+        final XmlConfigurator configurator = new TestServer().configurator("<server><services>"
+                + "<service name='a' type='T'><modules><module name='m' type='M'/></modules></service>"
+                + "</services><actions><action id='start'><service serviceName='a' method='start'/></action></actions>"
+                + "</server>");
+        configurator.execConfigurationAsync().get(10, TimeUnit.SECONDS);
+        configurator.execAction("start").get(10, TimeUnit.SECONDS);
+        configurator.execAction("start").get(10, TimeUnit.SECONDS);
+
+        final ConfiguratorMetrics metrics = configurator.getMetrics();
+        assertEquals(1, TestServer.count(metrics, "phase:parse"));
+        assertEquals(1, TestServer.count(metrics, "phase:execConfiguration"));
+        assertEquals(1, TestServer.count(metrics, "service:a"));
+        assertEquals(1, TestServer.count(metrics, "module:a/m"));
+        assertEquals(2, TestServer.count(metrics, "action:start"));
+        assertEquals(2, TestServer.count(metrics, "phase:startService"));
+        assertEquals(1, TestServer.count(metrics, "phase:noopTransition"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfiguratorTraceTest {
+    private static final long TIMEOUT = 10_000;
+
+    @Test
+    void criticalPathFollowsTheChainWhichEndedLast() throws Exception {
+        final ConfiguratorTrace trace = new ConfiguratorTrace("test");
+        final TraceSpan root = trace.getRoot();
+        final TraceSpan delay = root.child(TraceSpan.Kind.DELAY, "wait");
+        final TraceSpan service = root.child(TraceSpan.Kind.SERVICE, "short");
+        Thread.sleep(30);
+        service.end(false);
+        Thread.sleep(50);
+        delay.end(false);
+        final TraceSpan start = root.child(TraceSpan.Kind.START, "last");
+        Thread.sleep(30);
+        start.end(true);
+        root.end(false);
+
+        final List<String> lines = trace.criticalPath();
+        assertTrue(lines.get(0).startsWith("Critical path of test: "), lines.get(0));
+        assertTrue(lines.get(0).endsWith(", 2 of 4 spans"), lines.get(0));
+        assertTrue(lines.get(1).contains(" delay "), lines.get(1));
+        assertTrue(lines.get(1).contains(" start "), lines.get(1));
+        assertFalse(lines.get(1).contains(" service "), lines.get(1));
+        // the longest span first
+        assertTrue(lines.get(2).contains("delay    wait"), lines.get(2));
+        assertTrue(lines.get(3).endsWith("start    last (failed)"), lines.get(3));
+    }
+
+    @Test
+    void labelsDoNotDependOnTheDefaultLocale() {
+        final Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("libs", TraceSpan.Kind.LIBS.getLabel());
+            assertEquals("settings", TraceSpan.Kind.SETTINGS.getLabel());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void bootstrapTraceIsKeptAndActionsAreTracedOnRequest() throws Exception {
+        final XmlConfigurator configurator = new TestServer().configurator("<server><services>"
+                + "<service name='a' type='T' delay='50'/><service name='b' type='T' delay='100'/>"
+                + "</services><actions><action id='start'><service serviceName='a' method='start'/></action></actions>"
+                + "</server>");
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final ConfiguratorTrace bootstrap = configurator.getBootstrapTrace();
+        assertNotNull(bootstrap);
+        assertTrue(bootstrap.isFinished());
+        assertTrue(bootstrap.getDuration(TimeUnit.MILLISECONDS) >= 150);
+        final String criticalPath = String.join("\n", bootstrap.criticalPath());
+        assertTrue(criticalPath.contains("delay"), criticalPath);
+        assertTrue(criticalPath.contains("b > service"), criticalPath);
+
+        // not traced by default
+        configurator.execAction("start").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertSame(bootstrap, configurator.getLastTrace());
+
+        configurator.setActionTracing(true);
+        configurator.execAction("start").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals("execAction", configurator.getLastTrace().getName());
+        assertTrue(configurator.getLastTrace().getSpanCount() > 1);
+        assertSame(bootstrap, configurator.getBootstrapTrace());
+    }
+
+    @Test
+    void writesChromeTraceEvents() throws Throwable {
+        final ConfiguratorTrace trace = new ConfiguratorTrace("test");
+        trace.getRoot().child(TraceSpan.Kind.CREATE, "a\"b").run(() -> {
+        });
+        trace.getRoot().child(TraceSpan.Kind.DELAY, "wait").end(false);
+        trace.getRoot().end(false);
+
+        final StringWriter writer = new StringWriter();
+        trace.writeChromeTrace(writer);
+        final String json = writer.toString();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["), json);
+        assertTrue(json.contains("a\\\"b"), json);
+        assertTrue(json.contains("\"ph\":\"X\""), json);
+        assertTrue(json.trim().endsWith("}"), json);
+    }
+}
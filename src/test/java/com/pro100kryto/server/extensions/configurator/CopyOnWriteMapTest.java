@@ -0,0 +1,95 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.LayeredSettings;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CopyOnWriteMapTest {
+    private final Map<String, String> shared = Collections.unmodifiableMap(settings());
+    private final CopyOnWriteMap<String, String> map = new CopyOnWriteMap<>(shared);
+
+    @Test
+    void readsShareTheSettings() {
+        assertEquals(shared, map);
+        assertEquals("1", map.get("a"));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    void removeThroughEntryIterator() {
+        final Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey().equals("a")) iterator.remove();
+        }
+
+        assertEquals(2, map.size());
+        assertEquals(null, map.get("a"));
+        assertEquals(settings(), shared);
+    }
+
+    @Test
+    void removeThroughKeySet() {
+        assertTrue(map.keySet().remove("b"));
+        assertTrue(map.keySet().removeAll(Collections.singleton("c")));
+
+        assertEquals(Collections.singletonMap("a", "1"), map);
+        assertEquals(settings(), shared);
+    }
+
+    @Test
+    void removeThroughValues() {
+        assertTrue(map.values().removeIf(value -> !value.equals("2")));
+
+        assertEquals(Collections.singletonMap("b", "2"), map);
+        assertEquals(settings(), shared);
+    }
+
+    @Test
+    void setValueOfEntry() {
+        for (final Map.Entry<String, String> entry : map.entrySet()) {
+            entry.setValue(entry.getValue() + "0");
+        }
+
+        assertEquals("10", map.get("a"));
+        assertEquals("30", map.get("c"));
+        assertEquals(settings(), shared);
+    }
+
+    @Test
+    void clearThroughViews() {
+        map.entrySet().clear();
+        assertTrue(map.isEmpty());
+        assertEquals(settings(), shared);
+    }
+
+    @Test
+    void writesToLayeredSettingsAreCopied() {
+        final LayeredSettings layered = new LayeredSettings(shared, Collections.singletonMap("a", "0"));
+        final CopyOnWriteMap<String, String> layeredMap = new CopyOnWriteMap<>(layered);
+        layeredMap.keySet().remove("b");
+        layeredMap.put("d", "4");
+
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("a", "0");
+        expected.put("c", "3");
+        expected.put("d", "4");
+        assertEquals(expected, layeredMap);
+        assertEquals(3, layered.size());
+    }
+
+    private static Map<String, String> settings() {
+        final LinkedHashMap<String, String> settings = new LinkedHashMap<>();
+        settings.put("a", "1");
+        settings.put("b", "2");
+        settings.put("c", "3");
+        return settings;
+    }
+}
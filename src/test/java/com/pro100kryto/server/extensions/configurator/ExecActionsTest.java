@@ -0,0 +1,81 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecActionsTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String CONFIG = "<server><services>"
+            + "<service name='a' type='T'/><service name='b' type='T'/><service name='c' type='T'/>"
+            + "</services><actions>"
+            + "<action id='a' delay='300'><service serviceName='a' method='start'/></action>"
+            + "<action id='b' delay='300'><service serviceName='b' method='start'/></action>"
+            + "<action id='c' delay='300'><service serviceName='c' method='start'/></action>"
+            + "<action id='bad'><service serviceName='a' method='restart'/></action>"
+            + "</actions></server>";
+
+    private final TestServer server = new TestServer();
+
+    @Test
+    void resultsFollowTheFirstOccurrenceOfEachId() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        final List<ActionResult> results = configurator.execActions(Arrays.asList("b", "bad", "a", "b"), 2)
+                .get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, results.size());
+        assertEquals("b", results.get(0).getActionId());
+        assertEquals("bad", results.get(1).getActionId());
+        assertEquals("a", results.get(2).getActionId());
+        assertTrue(results.get(0).isSuccess());
+        // a failed action does not stop the others
+        assertFalse(results.get(1).isSuccess());
+        assertTrue(results.get(1).getError().getMessage().contains("restart"));
+        assertTrue(results.get(2).isSuccess());
+        assertTrue(results.get(2).getDuration(TimeUnit.MILLISECONDS) >= 300);
+
+        final List<String> calls = server.getCalls();
+        assertEquals(1, Collections.frequency(calls, "start a"));
+        assertEquals(1, Collections.frequency(calls, "start b"));
+    }
+
+    @Test
+    void parallelismLimitsConcurrentActions() throws Exception {
+        final XmlConfigurator configurator = configurator();
+        final List<String> actionIds = Arrays.asList("a", "b", "c");
+
+        long startNanos = System.nanoTime();
+        configurator.execActions(actionIds, 3).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(850));
+
+        startNanos = System.nanoTime();
+        configurator.execActions(actionIds, 1).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    void emptyAndInvalidRequests() throws Exception {
+        final XmlConfigurator configurator = configurator();
+
+        assertTrue(configurator.execActions(Collections.<String>emptyList(), 4)
+                .get(TIMEOUT, TimeUnit.MILLISECONDS).isEmpty());
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.execActions(Collections.singletonList("a"), 0).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(exception.getCause() instanceof IllegalArgumentException);
+    }
+
+    private XmlConfigurator configurator() throws Exception {
+        final XmlConfigurator configurator = server.configurator(CONFIG);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        return configurator;
+    }
+}
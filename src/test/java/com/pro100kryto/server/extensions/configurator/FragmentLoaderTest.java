@@ -0,0 +1,138 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FragmentLoaderTest {
+    private final FragmentLoader fragmentLoader = new FragmentLoader(new StaxConfigLoader(),
+            new ConfiguratorMetrics(), ForkJoinPool.commonPool());
+    private File directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("fragments").toFile();
+    }
+
+    @AfterEach
+    void deleteDirectory() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    void mergesIncludesInOrder() throws Exception {
+        write("a.xml", "<server><services><service name='a' type='T'/></services></server>");
+        write("b.xml", "<server><services><service name='b' type='T'/></services></server>");
+        final File main = write("config.xml", "<server><include path='a.xml'/><include path='b.xml'/>"
+                + "<services><service name='main' type='T'/></services></server>");
+
+        final FragmentLoader.Result result = load(main);
+        assertEquals(Arrays.asList("main", "a", "b"), serviceNames(result.getModel()));
+        assertEquals(2, result.getIncludedHashes().size());
+        assertEquals(3, result.getParsed());
+    }
+
+    @Test
+    void mergesSharedIncludeOnce() throws Exception {
+        write("shared.xml", "<server><services><service name='shared' type='T'/></services></server>");
+        write("a.xml", "<server><include path='shared.xml'/>"
+                + "<services><service name='a' type='T'/></services></server>");
+        write("b.xml", "<server><include path='shared.xml'/>"
+                + "<services><service name='b' type='T'/></services></server>");
+        final File main = write("config.xml", "<server><include path='a.xml'/><include path='b.xml'/></server>");
+
+        final FragmentLoader.Result result = load(main);
+        assertEquals(Arrays.asList("a", "shared", "b"), serviceNames(result.getModel()));
+        assertEquals(3, result.getIncludedHashes().size());
+    }
+
+    @Test
+    void rejectsIncludeCycle() throws Exception {
+        write("a.xml", "<server><include path='b.xml'/></server>");
+        write("b.xml", "<server><include path='a.xml'/></server>");
+        final File main = write("config.xml", "<server><include path='a.xml'/></server>");
+
+        final IllegalStateException exception = assertThrows(IllegalStateException.class, () -> load(main));
+        assertTrue(exception.getMessage().startsWith("Include cycle"), exception.getMessage());
+    }
+
+    @Test
+    void rejectsDuplicateServiceAndProfile() throws Exception {
+        write("service.xml", "<server><services><service name='s' type='T'/></services></server>");
+        final File services = write("config.xml", "<server><include path='service.xml'/>"
+                + "<services><service name='s' type='T'/></services></server>");
+        assertThrows(IllegalStateException.class, () -> load(services));
+
+        write("profile.xml", "<server><settingsProfile id='p'><setting key='k' val='1'/></settingsProfile></server>");
+        final File profiles = write("config.xml", "<server><include path='profile.xml'/>"
+                + "<settingsProfile id='p'><setting key='k' val='2'/></settingsProfile></server>");
+        assertThrows(IllegalStateException.class, () -> load(profiles));
+    }
+
+    @Test
+    void parsesOnlyChangedFiles() throws Exception {
+        write("a.xml", "<server><services><service name='a' type='T'/></services></server>");
+        final File main = write("config.xml", "<server><include path='a.xml'/></server>");
+        assertEquals(2, load(main).getParsed());
+        assertEquals(0, load(main).getParsed());
+
+        write("a.xml", "<server><services><service name='a2' type='T'/></services></server>");
+        final FragmentLoader.Result result = load(main);
+        assertEquals(1, result.getParsed());
+        assertEquals(Arrays.asList("a2"), serviceNames(result.getModel()));
+    }
+
+    @Test
+    void forgetsFilesNotIncludedAnymore() throws Exception {
+        write("a.xml", "<server><services><service name='a' type='T'/></services></server>");
+        write("config.xml", "<server><include path='a.xml'/></server>");
+        assertEquals(2, load(new File(directory, "config.xml")).getParsed());
+
+        write("config.xml", "<server/>");
+        assertEquals(1, load(new File(directory, "config.xml")).getParsed());
+
+        // a.xml is unchanged but was evicted, so it is parsed again
+        write("config.xml", "<server><include path='a.xml'/></server>");
+        assertEquals(2, load(new File(directory, "config.xml")).getParsed());
+    }
+
+    private FragmentLoader.Result load(File file) throws Exception {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        return fragmentLoader.load(file, bytes, ConfigSnapshot.hash(bytes));
+    }
+
+    private File write(String name, String xml) throws IOException {
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> serviceNames(ConfigModel model) {
+        final ArrayList<String> names = new ArrayList<>();
+        for (final ServiceConfig service : model.getServices().getServices()) {
+            names.add(service.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,133 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyModulesTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String CONFIG = "<server><services>"
+            + "<service name='a' type='T' lazy='true'><modules>"
+            + "<module name='m' type='M'><settings><setting key='k' val='v'/></settings></module>"
+            + "<module name='n' type='Broken'/>"
+            + "<module name='eager' type='M' lazy='false'/>"
+            + "</modules></service>"
+            + "</services><actions>"
+            + "<action id='start'><module serviceName='a' moduleName='m' method='start'/></action>"
+            + "<action id='stop'><module serviceName='a' moduleName='m' method='stop'/></action>"
+            + "</actions></server>";
+
+    private final AsyncEngine engine = new AsyncEngine("Test", new ConfiguratorMetrics());
+    private final LazyModules lazyModules = new LazyModules(engine);
+    private final AtomicInteger creations = new AtomicInteger();
+    private final CountDownLatch created = new CountDownLatch(1);
+
+    @AfterEach
+    void close() {
+        created.countDown();
+        engine.close();
+    }
+
+    @Test
+    void callerWhichCancelsDoesNotFailTheSharedCreation() throws Exception {
+        register();
+        final CompletableFuture<Void> firstToken = new CompletableFuture<>();
+        final CompletableFuture<Void> first = lazyModules.ensureCreated("a", "m", firstToken);
+        final CompletableFuture<Void> second = lazyModules.ensureCreated("a", "m", new CompletableFuture<>());
+
+        firstToken.cancel(false);
+        assertThrows(CancellationException.class, () -> first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertFalse(second.isDone());
+
+        created.countDown();
+        second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, creations.get());
+        assertTrue(lazyModules.getPending().isEmpty());
+    }
+
+    @Test
+    void callerCancelledBeforeTheCreationStartedDoesNotFailIt() throws Exception {
+        register();
+        created.countDown();
+        final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+        cancelled.cancel(false);
+
+        final CompletableFuture<Void> first = lazyModules.ensureCreated("a", "m", cancelled);
+        final CompletableFuture<Void> second = lazyModules.ensureCreated("a", "m", new CompletableFuture<>());
+
+        assertThrows(CancellationException.class, () -> first.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, creations.get());
+    }
+
+    @Test
+    void otherModulesAreNotCreated() throws Exception {
+        assertTrue(lazyModules.ensureCreated("a", "m", new CompletableFuture<>()).isDone());
+        assertFalse(lazyModules.isLazy("a", "m"));
+    }
+
+    @Test
+    void lazyModulesAreCreatedOnFirstTouch() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = server.configurator(CONFIG);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("a/m", "a/n"), sorted(configurator.getPendingLazyModules()));
+        assertEquals(1, server.getCreated("a/eager"));
+        assertEquals(0, server.getCreated("a/m"));
+
+        // a module which was never created is already stopped
+        configurator.execAction("stop").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(0, server.getCreated("a/m"));
+
+        configurator.execAction("start").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.createLazyModule("a", "m").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(1, server.getCreated("a/m"));
+        assertTrue(server.getCalls().indexOf("settings a/m {k=v}") < server.getCalls().indexOf("start a/m"));
+        assertEquals(Collections.singletonList("a/n"), configurator.getPendingLazyModules());
+    }
+
+    @Test
+    void failedCreationStaysPending() throws Exception {
+        final TestServer server = new TestServer();
+        final XmlConfigurator configurator = server.configurator(CONFIG);
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        server.failType("Broken");
+        assertThrows(ExecutionException.class,
+                () -> configurator.createLazyModule("a", "n").get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(configurator.getPendingLazyModules().contains("a/n"));
+
+        assertThrows(ExecutionException.class,
+                () -> configurator.createLazyModule("a", "eager").get(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private void register() {
+        lazyModules.register("a", "m", () -> {
+            creations.incrementAndGet();
+            created.await();
+            return null;
+        });
+    }
+
+    private static List<String> sorted(List<String> names) {
+        final List<String> list = new ArrayList<>(names);
+        Collections.sort(list);
+        return list;
+    }
+}
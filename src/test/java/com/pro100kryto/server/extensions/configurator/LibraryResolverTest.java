@@ -0,0 +1,108 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.BaseLibConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LibraryResolverTest {
+    private final ConfiguratorMetrics metrics = new ConfiguratorMetrics();
+    private final LibraryResolver resolver = new LibraryResolver(new TestServer().serverControl(),
+            TestServer.logger(), metrics);
+    private final File core = new File(System.getProperty("java.io.tmpdir"), "core");
+    private final List<File> files = new ArrayList<>();
+
+    @AfterEach
+    void delete() {
+        for (final File file : files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    void recursiveLibIsResolvedOnceWhileUnchanged() throws Throwable {
+        final BaseLibConfig lib = recursive(jar());
+
+        final List<URL> urls = resolver.resolve(lib);
+        assertEquals(urls, resolver.resolve(lib));
+        assertEquals(urls, resolver.resolve(new BaseLibConfig("./" + lib.getPath(), true)));
+        assertEquals(1, TestServer.count(metrics, "phase:resolveLib"));
+        assertTrue(resolver.getStats().contains("resolved: 1, cache hits: 2"), resolver.getStats());
+        assertEquals(1, resolver.getResolved().size());
+    }
+
+    @Test
+    void modifiedJarIsResolvedAgain() throws Throwable {
+        final File jar = jar();
+        final BaseLibConfig lib = recursive(jar);
+        resolver.resolve(lib);
+
+        assertTrue(jar.setLastModified(jar.lastModified() - 10_000));
+        resolver.resolve(lib);
+        resolver.resolve(lib);
+        assertEquals(2, TestServer.count(metrics, "phase:resolveLib"));
+        assertTrue(resolver.getStats().contains("resolved: 2, cache hits: 1"), resolver.getStats());
+    }
+
+    @Test
+    void plainLibIsNotCached() throws Throwable {
+        final File jar = jar();
+        final List<URL> urls = resolver.resolve(new BaseLibConfig(jar.getName(), false));
+
+        assertEquals(Collections.singletonList(jar.toURI().toURL()), urls);
+        assertTrue(resolver.getResolved().isEmpty());
+    }
+
+    @Test
+    void prefetchResolvesDistinctJarsForLaterCalls() throws Throwable {
+        final BaseLibConfig first = recursive(jar());
+        final BaseLibConfig second = recursive(jar());
+        resolver.prefetch(Arrays.asList(first, second, first), ForkJoinPool.commonPool())
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(2, TestServer.count(metrics, "phase:resolveLib"));
+
+        final Collection<URL> urls = resolver.resolveDistinct(Arrays.asList(first, second, first));
+        assertEquals(2, TestServer.count(metrics, "phase:resolveLib"));
+        assertEquals(resolver.resolve(first).size() + resolver.resolve(second).size(), urls.size());
+    }
+
+    @Test
+    void duplicateLibsAreAddedOnce() throws Throwable {
+        final File jar = jar();
+        final BaseLibConfig lib = new BaseLibConfig(jar.getName(), false);
+
+        assertEquals(Collections.singletonList(jar.toURI().toURL()),
+                new ArrayList<>(resolver.resolveDistinct(Arrays.asList(lib, lib))));
+    }
+
+    private File jar() throws Exception {
+        Files.createDirectories(core.toPath());
+        final File jar = File.createTempFile("lib", ".jar", core);
+        files.add(jar);
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        new JarOutputStream(new FileOutputStream(jar), manifest).close();
+        return jar;
+    }
+
+    private static BaseLibConfig recursive(File jar) {
+        return new BaseLibConfig(jar.getName(), true);
+    }
+}
@@ -0,0 +1,104 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelBootstrapTest {
+    private static final long TIMEOUT = 10_000;
+
+    private final TestServer server = new TestServer();
+
+    @Test
+    void dependentsWaitForOnLoadOfTheirDependencies() throws Exception {
+        execute("<server><services parallel='true' threads='4'>"
+                + "<service name='c' type='T' dependsOn='b'/>"
+                + "<service name='b' type='T' dependsOn='a'>"
+                + "<modules><module name='m2' type='M' dependsOn='m1'/><module name='m1' type='M'/></modules>"
+                + "</service>"
+                + "<service name='a' type='T' onLoad='startA'/>"
+                + "</services>"
+                + "<actions><action id='startA'><service serviceName='a' method='start'/></action></actions>"
+                + "</server>");
+
+        final List<String> calls = server.getCalls();
+        assertBefore(calls, "start a", "create b");
+        assertBefore(calls, "create b/m1", "create b/m2");
+        assertBefore(calls, "create b/m2", "create c");
+        assertEquals(6, calls.size());
+    }
+
+    @Test
+    void failedNodeSkipsOnlyItsDependents() throws Exception {
+        server.failType("Broken");
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> execute(
+                "<server><services parallel='true'>"
+                        + "<service name='x' type='Broken'/>"
+                        + "<service name='y' type='T' dependsOn='x'><modules><module name='m' type='M'/></modules></service>"
+                        + "<service name='z' type='T'><modules><module name='m' type='M'/></modules></service>"
+                        + "</services></server>"));
+
+        assertTrue(exception.getCause().getMessage().contains("1 failed"));
+        assertEquals(1, exception.getCause().getSuppressed().length);
+        assertEquals(Arrays.asList("z", "z/m"), sorted(server.getCreatedNames()));
+    }
+
+    @Test
+    void independentServicesRunConcurrently() throws Exception {
+        final long startNanos = System.nanoTime();
+        execute("<server><services parallel='true'>"
+                + "<service name='a' type='T' delay='500'/>"
+                + "<service name='b' type='T' delay='500'/>"
+                + "<service name='c' type='T' delay='500'/>"
+                + "</services></server>");
+
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(1400));
+        assertEquals(Arrays.asList("a", "b", "c"), sorted(server.getCreatedNames()));
+    }
+
+    @Test
+    void cycleFallsBackToSerialOrder() throws Exception {
+        execute("<server><services parallel='true'>"
+                + "<service name='a' type='T' dependsOn='b'/>"
+                + "<service name='b' type='T' dependsOn='a'/>"
+                + "<service name='c' type='T' dependsOn='unknown'/>"
+                + "</services></server>");
+
+        assertEquals(Arrays.asList("create a", "create b", "create c"), server.getCalls());
+    }
+
+    @Test
+    void serialBootstrapKeepsDeclarationOrder() throws Exception {
+        execute("<server><services>"
+                + "<service name='b' type='T' dependsOn='a'/>"
+                + "<service name='a' type='T'/>"
+                + "</services></server>");
+
+        assertEquals(Arrays.asList("create b", "create a"), server.getCalls());
+    }
+
+    private void execute(String xml) throws Exception {
+        server.configurator(xml).execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertBefore(List<String> calls, String first, String second) {
+        assertTrue(calls.contains(first), first + " missing in " + calls);
+        assertTrue(calls.indexOf(first) < calls.indexOf(second), first + " after " + second + " in " + calls);
+    }
+
+    private static List<String> sorted(Collection<String> names) {
+        final List<String> list = new ArrayList<>(names);
+        Collections.sort(list);
+        return list;
+    }
+}
@@ -0,0 +1,58 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SettingsProfilesTest {
+    private static final String CONFIG = "<server>"
+            + "<settingsProfiles><settingsProfile id='db'>"
+            + "<setting key='host' val='localhost'/><setting key='port' val='1'/>"
+            + "</settingsProfile></settingsProfiles>"
+            + "<services><service name='a' type='T'><modules>"
+            + "<module name='m1' type='M' profile='db'/>"
+            + "<module name='m2' type='M' profile='db'/>"
+            + "<module name='m3' type='M' profile='db'><settings><setting key='port' val='2'/></settings></module>"
+            + "<module name='m4' type='M'/>"
+            + "</modules></service></services></server>";
+
+    @Test
+    void modulesShareTheirProfile() throws Exception {
+        final ConfigModel model = TestServer.model(CONFIG);
+        final List<ModuleConfig> modules = model.getServices().getServices().get(0).getModules();
+
+        assertSame(model.getSettingsProfiles().get("db"), model.getModuleSettings(modules.get(0)));
+        assertSame(model.getModuleSettings(modules.get(0)), model.getModuleSettings(modules.get(1)));
+        assertEquals("2", model.getModuleSettings(modules.get(2)).get("port"));
+        assertEquals("localhost", model.getModuleSettings(modules.get(2)).get("host"));
+        assertEquals(null, model.getModuleSettings(modules.get(3)));
+    }
+
+    @Test
+    void modulesGetLayeredSettings() throws Exception {
+        final TestServer server = new TestServer();
+        server.configurator(CONFIG).execConfigurationAsync().get(10, TimeUnit.SECONDS);
+
+        final List<String> calls = server.getCalls();
+        assertTrue(calls.contains("settings a/m1 {host=localhost, port=1}"), calls.toString());
+        assertTrue(calls.contains("settings a/m2 {host=localhost, port=1}"), calls.toString());
+        assertTrue(calls.contains("settings a/m3 {host=localhost, port=2}"), calls.toString());
+        assertTrue(calls.contains("create a/m4"), calls.toString());
+        assertEquals(0, calls.stream().filter(call -> call.startsWith("settings a/m4")).count());
+    }
+
+    @Test
+    void unknownProfileIsRejected() {
+        final IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> TestServer.model(CONFIG.replace("profile='db'/>", "profile='dc'/>")));
+        assertTrue(exception.getMessage().contains("'dc'"));
+    }
+}
@@ -0,0 +1,130 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShutdownTest {
+    private static final long TIMEOUT = 10_000;
+    private static final String SERVICES = "<service name='a' type='T'><modules><module name='m' type='M'/></modules></service>"
+            + "<service name='b' type='T' dependsOn='a'/>"
+            + "<service name='c' type='T'/>";
+    private static final String ACTIONS = "<actions><action id='start'>"
+            + "<service serviceName='a' method='start'/><module serviceName='a' moduleName='m' method='start'/>"
+            + "<service serviceName='b' method='start'/><service serviceName='c' method='start'/>"
+            + "</action></actions>";
+
+    private final TestServer server = new TestServer();
+
+    @AfterEach
+    void release() {
+        server.release();
+    }
+
+    @Test
+    void serialBootstrapStopsInReverseCreationOrder() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        configurator.shutdown(false, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("stop c", "stop b", "stop a/m", "stop a"), stops());
+    }
+
+    @Test
+    void parallelBootstrapStopsDependentsFirst() throws Exception {
+        final XmlConfigurator configurator = started(true);
+        configurator.shutdown(false, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        final List<String> stops = stops();
+        assertEquals(4, stops.size());
+        assertTrue(stops.indexOf("stop b") < stops.indexOf("stop a/m"), stops.toString());
+        assertTrue(stops.indexOf("stop a/m") < stops.indexOf("stop a"), stops.toString());
+    }
+
+    @Test
+    void stoppedTargetsAreSkipped() throws Exception {
+        final XmlConfigurator configurator = server.configurator(config(false));
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.shutdown(false, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertTrue(stops().isEmpty());
+    }
+
+    @Test
+    void forcedShutdownForcesEveryStop() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        configurator.shutdown(true, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("stop! c", "stop! b", "stop! a/m", "stop! a"), stops());
+    }
+
+    @Test
+    void failedStopIsEscalated() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        server.failStop("b");
+        configurator.shutdown(false, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("stop c", "stop b", "stop! b", "stop a/m", "stop a"), stops());
+    }
+
+    @Test
+    void hangingStopIsEscalatedAfterTheNodeTimeout() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        server.hangStop("b");
+
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.shutdown(false, 200, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        // the forced stop hangs as well, the others are stopped anyway
+        assertTrue(exception.getCause().getMessage().contains("1 of 4"), exception.getCause().getMessage());
+        assertTrue(exception.getCause().getSuppressed()[0].getMessage().contains("\"service:b\" is not stopped"));
+        assertEquals(Arrays.asList("stop c", "stop b", "stop! b", "stop a/m", "stop a"), stops());
+    }
+
+    @Test
+    void shutdownTimeoutBoundsTheWholeShutdown() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        server.hangStop("c");
+
+        final long startNanos = System.nanoTime();
+        final ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> configurator.shutdown(false, TIMEOUT, 300).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(TIMEOUT / 2));
+        assertTrue(exception.getCause().getMessage().contains("of 4"), exception.getCause().getMessage());
+    }
+
+    @Test
+    void configuratorIsUsableAfterShutdown() throws Exception {
+        final XmlConfigurator configurator = started(false);
+        configurator.shutdown(false, TIMEOUT, TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        configurator.execAction("start").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals("start c", server.getCalls().get(server.getCalls().size() - 1));
+    }
+
+    private XmlConfigurator started(boolean parallel) throws Exception {
+        final XmlConfigurator configurator = server.configurator(config(parallel));
+        configurator.execConfigurationAsync().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        configurator.execAction("start").get(TIMEOUT, TimeUnit.MILLISECONDS);
+        return configurator;
+    }
+
+    private List<String> stops() {
+        final List<String> stops = new ArrayList<>();
+        for (final String call : server.getCalls()) {
+            if (call.startsWith("stop")) stops.add(call);
+        }
+        return stops;
+    }
+
+    private static String config(boolean parallel) {
+        return "<server><services parallel='" + parallel + "'>" + SERVICES + "</services>" + ACTIONS + "</server>";
+    }
+}
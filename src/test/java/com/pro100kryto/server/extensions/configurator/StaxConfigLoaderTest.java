@@ -0,0 +1,162 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.extensions.configurator.model.ActionConfig;
+import com.pro100kryto.server.extensions.configurator.model.ActionElementConfig;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.extensions.configurator.model.ModuleConfig;
+import com.pro100kryto.server.extensions.configurator.model.ServiceConfig;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StaxConfigLoaderTest {
+    private final StaxConfigLoader loader = new StaxConfigLoader();
+
+    @Test
+    void takesOnlyDirectChildSettings() throws Exception {
+        final ConfigModel model = load("<server>"
+                + "<settings><setting key='server' val='1'/></settings>"
+                + "<services><service name='s' type='T'>"
+                + "  <settings><setting key='service' val='2'/></settings>"
+                + "  <modules><module name='m' type='M'>"
+                + "    <settings><setting key='module' val='3'/></settings>"
+                + "  </module></modules>"
+                + "</service></services>"
+                + "</server>");
+
+        assertEquals(Collections.singletonMap("server", "1"), model.getSettings());
+        final ServiceConfig service = model.getServices().getServices().get(0);
+        assertEquals(Collections.singletonMap("service", "2"), service.getSettings());
+        assertEquals(Collections.singletonMap("module", "3"), service.getModules().get(0).getSettings());
+    }
+
+    @Test
+    void readsServicesAndModules() throws Exception {
+        final ConfigModel model = load("<server>"
+                + "<services delay='5' parallel='true' threads='3'>"
+                + "  <service name='a' type='A'/>"
+                + "  <service name='b' type='B' delay='7' dependsOn=' a , ,c '>"
+                + "    <modules delay='2'>"
+                + "      <module name='m1' type='M'/>"
+                + "      <module name='m2' type='M' dependsOn='m1' lazy='true'/>"
+                + "    </modules>"
+                + "  </service>"
+                + "</services>"
+                + "</server>");
+
+        assertEquals(5, model.getServices().getDelay());
+        assertTrue(model.getServices().isParallel());
+        assertEquals(3, model.getServices().getThreads());
+
+        final ServiceConfig a = model.getServices().getServices().get(0);
+        assertEquals("a", a.getName());
+        assertEquals(Collections.emptyList(), a.getDependsOn());
+
+        final ServiceConfig b = model.getServices().getServices().get(1);
+        assertEquals("B", b.getType());
+        assertEquals(7, b.getDelay());
+        assertEquals(Arrays.asList("a", "c"), b.getDependsOn());
+        assertEquals(2, b.getModulesDelay());
+
+        final ModuleConfig m1 = b.getModules().get(0);
+        final ModuleConfig m2 = b.getModules().get(1);
+        assertFalse(m1.isLazy());
+        assertEquals(Collections.emptyList(), m1.getDependsOn());
+        assertTrue(m2.isLazy());
+        assertEquals(Collections.singletonList("m1"), m2.getDependsOn());
+    }
+
+    @Test
+    void readsActions() throws Exception {
+        final ConfigModel model = load("<server><actions delay='10'>"
+                + "<action id='go' delay='20'>"
+                + "  <service method='start' serviceName='s' delay='1'/>"
+                + "  <module method='stop' serviceName='s' moduleName='m' force='true'/>"
+                + "  <action id='other'/>"
+                + "</action>"
+                + "<action id='other'/>"
+                + "</actions></server>");
+
+        assertEquals(10, model.getActions().getDelay());
+        assertEquals(2, model.getActions().getActions().size());
+
+        final ActionConfig go = model.getActions().getActions().get(0);
+        assertEquals("go", go.getId());
+        assertEquals(20, go.getDelay());
+        assertEquals(3, go.getElements().size());
+
+        final ActionElementConfig service = go.getElements().get(0);
+        assertEquals("service", service.getTag());
+        assertEquals("start", service.getMethod());
+        assertEquals("s", service.getServiceName());
+        assertEquals(1, service.getDelay());
+        assertFalse(service.isForce());
+
+        final ActionElementConfig module = go.getElements().get(1);
+        assertEquals("module", module.getTag());
+        assertEquals("m", module.getModuleName());
+        assertTrue(module.isForce());
+
+        assertEquals("other", go.getElements().get(2).getId());
+    }
+
+    @Test
+    void readsSettingsProfilesAndIncludes() throws Exception {
+        final ConfigFragment fragment = loader.load(stream("<server>"
+                + "<include path='a.xml'/><include path=''/>"
+                + "<settingsProfiles><settingsProfile id='p'><setting key='k' val='v'/></settingsProfile>"
+                + "</settingsProfiles>"
+                + "<services><service name='s' type='T'><modules>"
+                + "  <module name='m' type='M' profile='p'/>"
+                + "</modules></service></services>"
+                + "</server>"));
+
+        assertEquals(Collections.singletonList("a.xml"), fragment.getIncludes());
+        final ConfigModel model = ConfigFragment.merge(Collections.singletonMap("config.xml", fragment));
+        assertEquals(Collections.singletonMap("k", "v"), model.getSettingsProfiles().get("p"));
+        final ModuleConfig module = model.getServices().getServices().get(0).getModules().get(0);
+        assertEquals("p", module.getProfile());
+        assertEquals("v", model.getModuleSettings(module).get("k"));
+    }
+
+    @Test
+    void emptyServerHasEmptyModel() throws Exception {
+        final ConfigModel model = load("<server/>");
+        assertTrue(model.getServices().getServices().isEmpty());
+        assertTrue(model.getActions().getActions().isEmpty());
+        assertTrue(model.getSettings().isEmpty());
+        assertNull(model.getServices().getOnLoad());
+    }
+
+    @Test
+    void rejectsMalformedXml() {
+        assertThrows(XMLStreamException.class, () -> load("<server><services><service name='s'></services>"));
+        assertThrows(XMLStreamException.class, () -> load(""));
+        assertThrows(XMLStreamException.class, () -> load("<server><settingsProfile id='p'/>"
+                + "<settingsProfile id='p'/></server>"));
+    }
+
+    @Test
+    void rejectsInvalidDelay() {
+        assertThrows(NumberFormatException.class, () -> load("<server><services>"
+                + "<service name='s' type='T' delay='soon'/></services></server>"));
+    }
+
+    private ConfigModel load(String xml) throws XMLStreamException {
+        return ConfigFragment.merge(Collections.singletonMap("config.xml", loader.load(stream(xml))));
+    }
+
+    private static ByteArrayInputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,148 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TargetLocksTest {
+    private static final long TIMEOUT = 10_000;
+    /**
+     * Time in which an operation which is not blocked surely started.
+     */
+    private static final long BLOCKED = 200;
+
+    private final TargetLocks locks = new TargetLocks();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void shutdown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void serviceOperationsRunOneAfterAnother() throws Exception {
+        holdService("a");
+        final CompletableFuture<Void> second = run(() -> locks.runWithService("a", () -> {
+        }));
+
+        assertBlocked(second);
+        release.countDown();
+        second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void serviceOperationExcludesItsModules() throws Exception {
+        holdService("a");
+        final CompletableFuture<Void> module = run(() -> locks.runWithModule("a", "m", () -> {
+        }));
+
+        assertBlocked(module);
+        release.countDown();
+        module.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void otherTargetsRunConcurrently() throws Exception {
+        final CountDownLatch held = new CountDownLatch(1);
+        run(() -> locks.runWithModule("a", "m", () -> {
+            held.countDown();
+            release.await();
+        }));
+        assertTrue(held.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // another module of the same service and another service
+        run(() -> locks.runWithModule("a", otherStripe("a/m", "a/"), () -> {
+        })).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        run(() -> locks.runWithService(otherStripe("a", ""), () -> {
+        })).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void waitingOperationsRunInArrivalOrder() throws Exception {
+        holdService("a");
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            waiting.add(run(() -> locks.runWithService("a", () -> order.add(index))));
+            // queued before the next one arrives
+            Thread.sleep(BLOCKED);
+        }
+
+        release.countDown();
+        CompletableFuture.allOf(waiting.toArray(new CompletableFuture<?>[0])).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(0, 1, 2), order);
+    }
+
+    @Test
+    void supplierResultAndErrorsArePassed() throws Throwable {
+        assertEquals("a", locks.supplyWithService("a", () -> "a"));
+        assertEquals("m", locks.supplyWithModule("a", "m", () -> "m"));
+        try {
+            locks.runWithService("a", () -> {
+                throw new IllegalStateException("failed");
+            });
+        } catch (IllegalStateException expected) {
+            // the lock is released
+            assertEquals("b", locks.supplyWithService("a", () -> "b"));
+            return;
+        }
+        throw new AssertionError("exception expected");
+    }
+
+    private void holdService(String serviceName) throws InterruptedException {
+        final CountDownLatch held = new CountDownLatch(1);
+        run(() -> locks.runWithService(serviceName, () -> {
+            held.countDown();
+            release.await();
+        }));
+        assertTrue(held.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private CompletableFuture<Void> run(AsyncEngine.ThrowingRunnable runnable) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                runnable.run();
+                future.complete(null);
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+
+    private static void assertBlocked(CompletableFuture<Void> future) throws InterruptedException {
+        Thread.sleep(BLOCKED);
+        assertFalse(future.isDone());
+    }
+
+    /**
+     * @return name whose key "prefix + name" is on another stripe than the given key
+     */
+    private static String otherStripe(String key, String prefix) {
+        for (int i = 0; ; i++) {
+            if (stripe(prefix + "x" + i) != stripe(key)) return "x" + i;
+        }
+    }
+
+    private static int stripe(String key) {
+        final int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & 63;
+    }
+}
@@ -0,0 +1,225 @@
+package com.pro100kryto.server.extensions.configurator;
+
+import com.pro100kryto.server.IServerControl;
+import com.pro100kryto.server.StartStopStatus;
+import com.pro100kryto.server.extensions.configurator.model.ConfigModel;
+import com.pro100kryto.server.logger.ILogger;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server without services of its own: every service and module is a proxy which only keeps its status.
+ * Counts created services and modules, records calls and can fail or block creating a service.
+ */
+final class TestServer {
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Object> targets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+    private final Set<String> failingTypes = ConcurrentHashMap.newKeySet();
+    private final Set<String> failingStops = ConcurrentHashMap.newKeySet();
+    private final Set<String> hangingStops = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopReleased = new CountDownLatch(1);
+    private volatile CountDownLatch createEntered = new CountDownLatch(0);
+    private volatile CountDownLatch createReleased = new CountDownLatch(0);
+
+    IServerControl serverControl() {
+        return proxy(IServerControl.class, "server");
+    }
+
+    /**
+     * @return creations of the service or of the module named "service/module"
+     */
+    int getCreated(String name) {
+        final AtomicInteger count = created.get(name);
+        return count == null ? 0 : count.get();
+    }
+
+    Set<String> getCreatedNames() {
+        return Collections.unmodifiableSet(created.keySet());
+    }
+
+    /**
+     * @return "create name", "start name", "stop name", "stop! name" (forced), "setting name key=value"
+     * and "settings name {sorted settings}" in the order of the calls
+     */
+    List<String> getCalls() {
+        synchronized (calls) {
+            return new ArrayList<>(calls);
+        }
+    }
+
+    void failType(String type) {
+        failingTypes.add(type);
+    }
+
+    /**
+     * A stop of the service or of the module "service/module" which is not forced fails.
+     */
+    void failStop(String name) {
+        failingStops.add(name);
+    }
+
+    /**
+     * Every stop of the service or of the module "service/module" blocks until {@link #release()}.
+     */
+    void hangStop(String name) {
+        hangingStops.add(name);
+    }
+
+    /**
+     * Creating services blocks until {@link #release()}.
+     *
+     * @return counted down once a creation is blocked
+     */
+    CountDownLatch block() {
+        createReleased = new CountDownLatch(1);
+        return createEntered = new CountDownLatch(1);
+    }
+
+    void release() {
+        createReleased.countDown();
+        stopReleased.countDown();
+    }
+
+    /**
+     * @return configurator which loaded the configuration from a temporary file
+     */
+    XmlConfigurator configurator(String xml) throws Exception {
+        return configurator(configFile(xml));
+    }
+
+    XmlConfigurator configurator(File file) throws Exception {
+        final XmlConfigurator configurator = new XmlConfigurator(serverControl(), 15, logger());
+        configurator.loadFromFile(file);
+        return configurator;
+    }
+
+    static File configFile(String xml) throws IOException {
+        final File file = File.createTempFile("config", ".xml");
+        file.deleteOnExit();
+        write(file, xml);
+        return file;
+    }
+
+    static void write(File file, String xml) throws IOException {
+        Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return count of records of "category:name" in the report
+     */
+    static long count(ConfiguratorMetrics metrics, String key) {
+        for (final String line : metrics.report()) {
+            if (line.startsWith(key + " count=")) {
+                final int start = key.length() + " count=".length();
+                final int end = line.indexOf(' ', start);
+                return Long.parseLong(line.substring(start, end));
+            }
+        }
+        return 0;
+    }
+
+    static ILogger logger() {
+        return (ILogger) Proxy.newProxyInstance(TestServer.class.getClassLoader(), new Class<?>[]{ILogger.class},
+                (proxy, method, args) -> defaultValue(method, proxy, args));
+    }
+
+    static ConfigModel model(String xml) throws XMLStreamException {
+        return ConfigFragment.merge(Collections.singletonMap("config.xml", new StaxConfigLoader()
+                .load(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))));
+    }
+
+    // --------------
+
+    private <T> T proxy(Class<T> type, String name) {
+        final StartStopStatus[] status = {StartStopStatus.STOPPED};
+        return type.cast(Proxy.newProxyInstance(TestServer.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getStatus":
+                            return status[0];
+                        case "start":
+                            calls.add("start " + name);
+                            status[0] = StartStopStatus.STARTED;
+                            return null;
+                        case "stop":
+                            calls.add(((Boolean) args[0] ? "stop! " : "stop ") + name);
+                            if (hangingStops.contains(name)) stopReleased.await();
+                            if (!(Boolean) args[0] && failingStops.contains(name))
+                                throw new IllegalStateException("Failed to stop " + name);
+                            status[0] = StartStopStatus.STOPPED;
+                            return null;
+                        case "setSetting":
+                            calls.add("setting " + name + " " + args[0] + "=" + args[1]);
+                            return null;
+                        case "setSettings":
+                            calls.add("settings " + name + " " + new TreeMap<>((Map<?, ?>) args[0]));
+                            return null;
+                        case "getWorkingPath":
+                            return System.getProperty("java.io.tmpdir");
+                        case "createService":
+                            return create(method, (String) args[0], (String) args[1]);
+                        case "createModule":
+                            return create(method, (String) args[0], name + "/" + args[1]);
+                        case "getService":
+                            return target(method.getReturnType(), (String) args[0]);
+                        case "getModule":
+                            return target(method.getReturnType(), name + "/" + args[0]);
+                        case "createLogger":
+                            return logger();
+                    }
+                    if (method.getReturnType().isInterface()) return proxy(method.getReturnType(), name);
+                    return defaultValue(method, proxy, args);
+                }));
+    }
+
+    private Object create(Method method, String type, String name) throws Exception {
+        createEntered.countDown();
+        createReleased.await();
+        if (failingTypes.contains(type)) throw new IllegalStateException("Failed to create " + name);
+        calls.add("create " + name);
+        created.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+        final Object target = proxy(method.getReturnType(), name);
+        targets.put(name, target);
+        return target;
+    }
+
+    private Object target(Class<?> type, String name) {
+        final Object target = targets.get(name);
+        if (target == null) throw new IllegalStateException("'" + name + "' is not created");
+        return type.isInstance(target) ? target : proxy(type, name);
+    }
+
+    private static Object defaultValue(Method method, Object proxy, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "proxy";
+        }
+        final Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type.isEnum()) return type.getEnumConstants()[0];
+        return null;
+    }
+}
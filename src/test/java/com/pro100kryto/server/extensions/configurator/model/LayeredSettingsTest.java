@@ -0,0 +1,58 @@
+package com.pro100kryto.server.extensions.configurator.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LayeredSettingsTest {
+
+    @Test
+    void overridesWinOverTheBase() {
+        final LayeredSettings settings = new LayeredSettings(map("a", "1", "b", "2"), map("b", "0", "c", "3"));
+
+        assertEquals("1", settings.get("a"));
+        assertEquals("0", settings.get("b"));
+        assertEquals("3", settings.get("c"));
+        assertNull(settings.get("d"));
+        assertTrue(settings.containsKey("a"));
+        assertFalse(settings.containsKey("d"));
+        assertEquals(3, settings.size());
+        assertEquals(Arrays.asList("b", "c", "a"), new ArrayList<>(settings.keySet()));
+        assertEquals(map("a", "1", "b", "0", "c", "3"), new HashMap<>(settings));
+    }
+
+    @Test
+    void isReadOnly() {
+        final LayeredSettings settings = new LayeredSettings(map("a", "1"), map("b", "2"));
+
+        assertThrowsUnsupported(() -> settings.put("c", "3"));
+        assertThrowsUnsupported(() -> settings.entrySet().iterator().next().setValue("0"));
+        assertThrowsUnsupported(() -> settings.keySet().remove("a"));
+    }
+
+    private static Map<String, String> map(String... keyValues) {
+        final LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            map.put(keyValues[i], keyValues[i + 1]);
+        }
+        return map;
+    }
+
+    private static void assertThrowsUnsupported(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (UnsupportedOperationException expected) {
+            return;
+        }
+        throw new AssertionError("expected UnsupportedOperationException");
+    }
+}